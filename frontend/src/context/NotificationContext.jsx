@@ -4,11 +4,26 @@ import {ensureUserKey} from "../hooks/useUserKey";
 const Ctx = createContext(null);
 export const useNotifications = () => useContext(Ctx);
 
+const isNewer = (a, b) => {
+  if (!b) return true;
+  const d = new Date(a.createdAt) - new Date(b.createdAt);
+  return d > 0 || (d === 0 && a.id > b.id);
+};
+
 export function NotificationsProvider({children}) {
   const userKey = ensureUserKey();
   const [items, setItems] = useState([]);
   const [open, setOpen] = useState(false);
-  const lastSinceRef = useRef(null);
+  const [unread, setUnread] = useState(0);
+  // самая новая полученная строка: опрос забирает то, что появилось после её cursor
+  const newestRef = useRef(null);
+
+  const refreshUnread = async () => {
+    try {
+      const res = await fetch(`/api/notifications/unread-count?${new URLSearchParams({ userKey })}`);
+      if (res.ok) setUnread((await res.json()).unread ?? 0);
+    } catch (_) {}
+  };
 
   useEffect(() => {
     let cancelled = false;
@@ -16,7 +31,7 @@ export function NotificationsProvider({children}) {
     async function load() {
       try {
         const qs = new URLSearchParams({ userKey });
-        if (lastSinceRef.current) qs.set("since", lastSinceRef.current);
+        if (newestRef.current) qs.set("after", newestRef.current.cursor);
 
         const res = await fetch(`/api/notifications?${qs.toString()}`);
         if (!res.ok) return;
@@ -26,12 +41,13 @@ export function NotificationsProvider({children}) {
           setItems(prev => {
             const known = new Set(prev.map(n => n.id));
             const merged = [...fresh.filter(n => !known.has(n.id)), ...prev];
-            return merged.sort((a,b) => new Date(b.createdAt) - new Date(a.createdAt));
+            return merged.sort((a,b) => new Date(b.createdAt) - new Date(a.createdAt) || b.id - a.id);
           });
-          const maxIso = fresh.map(n => n.createdAt).filter(Boolean).sort().slice(-1)[0];
-          if (maxIso) lastSinceRef.current = maxIso;
+          // в ответе на after за новыми строками идёт окно перекрытия позади курсора — курсор назад не двигаем
+          const newest = fresh.filter(n => n.cursor).reduce((a, b) => (isNewer(b, a) ? b : a), newestRef.current);
+          if (newest) newestRef.current = newest;
         }
-        if (!lastSinceRef.current) lastSinceRef.current = new Date().toISOString();
+        if (!cancelled) await refreshUnread();
       } catch (_) {}
     }
 
@@ -40,17 +56,19 @@ export function NotificationsProvider({children}) {
     return () => { cancelled = true; clearInterval(id); };
   }, [userKey]);
 
-  const unread = items.filter(n => !n.readFlag).length;
-
   const markRead = async (id) => {
+    const wasUnread = items.some(n => n.id === id && !n.readFlag);
     try { await fetch(`/api/notifications/${id}/read`, { method: "PATCH" }); } catch {}
     setItems(prev => prev.map(n => n.id === id ? {...n, readFlag: true} : n));
+    if (wasUnread) setUnread(u => Math.max(0, u - 1));
   };
 
   const markAllRead = async () => {
-    const ids = items.filter(n => !n.readFlag).map(n => n.id);
-    await Promise.all(ids.map(id => fetch(`/api/notifications/${id}/read`, { method: "PATCH" }).catch(()=>{})));
+    try {
+      await fetch(`/api/notifications/read-all?${new URLSearchParams({ userKey })}`, { method: "PATCH" });
+    } catch {}
     setItems(prev => prev.map(n => ({...n, readFlag: true})));
+    setUnread(0);
   };
 
   return (
@@ -5,7 +5,8 @@ const WS_URL = "ws://localhost:8080/ws/prices";
 
 /**
  * Держит одно WS-соединение и кладёт приходящие бары в setLatestData.
- * REST-подписка/отписка выполняется при смене ticker.
+ * Смена ticker отправляется прямо по сокету (subscribe/unsubscribe);
+ * REST-подписка остаётся для привязки алертов к пользователю.
  */
 export default function useLiveStockChartData(ticker, setLatestData) {
     const wsRef = useRef(null);
@@ -13,6 +14,12 @@ export default function useLiveStockChartData(ticker, setLatestData) {
     const backoffRef = useRef(1000);
     const lastTickerRef = useRef(null);
 
+    const sendCommand = (action, t) => {
+        const ws = wsRef.current;
+        if (!t || !ws || ws.readyState !== WebSocket.OPEN) return;
+        ws.send(JSON.stringify({ action, tickers: [t] }));
+    };
+
     useEffect(() => {
         stopRef.current = false;
 
@@ -22,11 +29,14 @@ export default function useLiveStockChartData(ticker, setLatestData) {
 
             ws.onopen = () => {
                 backoffRef.current = 1000;
+                sendCommand("subscribe", lastTickerRef.current);
             };
 
             ws.onmessage = (e) => {
                 try {
                     const dto = JSON.parse(e.data); // {ticker, price, timestamp}
+                    // после смены тикера ещё могут дойти кадры прежнего
+                    if (dto?.ticker?.toUpperCase() !== lastTickerRef.current?.toUpperCase()) return;
                     setLatestData?.(dto);
                 } catch (_) {}
             };
@@ -50,9 +60,11 @@ export default function useLiveStockChartData(ticker, setLatestData) {
     useEffect(() => {
         if (!ticker) return;
         lastTickerRef.current = ticker;
+        sendCommand("subscribe", ticker);
         fetch(`${API}/api/stocks/subscribe/${encodeURIComponent(ticker)}`, { method: "POST" }).catch(() => {});
         return () => {
             const t = lastTickerRef.current;
+            sendCommand("unsubscribe", t);
             if (t) fetch(`${API}/api/stocks/unsubscribe/${encodeURIComponent(t)}`, { method: "POST" }).catch(() => {});
         };
     }, [ticker]);
@@ -26,6 +26,9 @@ const periods = [
     { label: "5 Years", value: "five_years" },
 ];
 
+// сервер сливает бары по времени до этого числа точек — больше линии графика не нужно
+const CHART_MAX_POINTS = 600;
+
 const CompanyPage = () => {
     const { ticker } = useParams();
     const [company, setCompany] = useState(null);
@@ -92,7 +95,7 @@ const CompanyPage = () => {
         const fetchHistorical = async () => {
             try {
                 const response = await fetch(
-                    `${import.meta.env.VITE_API_URL}/api/historical/${ticker}?period=${period}`
+                    `${import.meta.env.VITE_API_URL}/api/historical/${ticker}?period=${period}&maxPoints=${CHART_MAX_POINTS}`
                 );
                 if (!response.ok) throw new Error("Historical service unavailable");
                 const raw = await response.json();
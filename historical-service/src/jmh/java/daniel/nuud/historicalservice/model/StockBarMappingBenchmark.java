@@ -0,0 +1,122 @@
+package daniel.nuud.historicalservice.model;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import daniel.nuud.historicalservice.dto.ApiResponse;
+import daniel.nuud.historicalservice.dto.StockBarApi;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Маппинг баров графика из ответа Polygon: StockBar.of на примитивах против прежнего
+ * builder'а с обёртками, LocalDateTime и склеенным id на каждый бар.
+ * Данные — ответы из mocks/wiremock/__files/historical; *ToJson включают сериализацию,
+ * потому что id и date теперь вычисляются только там. Аллокации на операцию: ./gradlew jmh (-prof gc).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StockBarMappingBenchmark {
+
+    @Param({"AAPL_week", "AAPL_month", "AMD_week", "AMD_month", "AMZN_week", "AMZN_month",
+            "NVDA_week", "NVDA_month", "TSLA_week", "TSLA_month"})
+    public String fixture;
+
+    private final ObjectMapper mapper = new ObjectMapper()
+            .findAndRegisterModules()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private String ticker;
+    private List<StockBarApi> results;
+
+    @Setup
+    public void setUp() throws Exception {
+        Path dir = Path.of(System.getProperty("fixtures.dir", "../mocks/wiremock/__files/historical"));
+        ApiResponse resp = mapper.readValue(Files.readAllBytes(dir.resolve(fixture + ".json")), ApiResponse.class);
+        ticker = resp.getTicker();
+        results = resp.getResults();
+    }
+
+    @Benchmark
+    public List<StockBar> primitive() {
+        List<StockBar> out = new ArrayList<>(results.size());
+        for (StockBarApi dto : results) out.add(StockBar.of(ticker, dto));
+        return out;
+    }
+
+    @Benchmark
+    public List<LegacyBar> legacyBuilder() {
+        List<LegacyBar> out = new ArrayList<>(results.size());
+        for (StockBarApi dto : results) out.add(LegacyBar.map(ticker, dto));
+        return out;
+    }
+
+    @Benchmark
+    public void primitiveToJson(Blackhole bh) throws Exception {
+        bh.consume(mapper.writeValueAsBytes(primitive()));
+    }
+
+    @Benchmark
+    public void legacyToJson(Blackhole bh) throws Exception {
+        bh.consume(mapper.writeValueAsBytes(legacyBuilder()));
+    }
+
+    /** Прежний StockBar: обёртки, хранимые id и date, builder на каждый бар. */
+    public record LegacyBar(String id, String ticker, LocalDateTime date, Double closePrice, Double lowPrice,
+                            Double highPrice, Double openPrice, Long volume, Integer numberOfTransactions,
+                            Long timestamp) {
+
+        static LegacyBar map(String ticker, StockBarApi dto) {
+            long ts = dto.getTimestamp();
+            LocalDateTime dt = LocalDateTime.ofInstant(Instant.ofEpochMilli(ts), ZoneOffset.UTC);
+
+            Builder b = new Builder();
+            b.id = ticker.toUpperCase(Locale.ROOT) + ":" + ts;
+            b.ticker = ticker.toUpperCase(Locale.ROOT);
+            b.timestamp = ts;
+            b.date = dt;
+            b.openPrice = dto.getOpenPrice();
+            b.highPrice = dto.getHighPrice();
+            b.lowPrice = dto.getLowPrice();
+            b.closePrice = dto.getClosePrice();
+            b.volume = dto.getVolume();
+            b.numberOfTransactions = dto.getNumberOfTransactions();
+            return b.build();
+        }
+
+        private static final class Builder {
+            String id;
+            String ticker;
+            LocalDateTime date;
+            Double closePrice;
+            Double lowPrice;
+            Double highPrice;
+            Double openPrice;
+            Long volume;
+            Integer numberOfTransactions;
+            Long timestamp;
+
+            LegacyBar build() {
+                return new LegacyBar(id, ticker, date, closePrice, lowPrice, highPrice, openPrice,
+                        volume, numberOfTransactions, timestamp);
+            }
+        }
+    }
+}
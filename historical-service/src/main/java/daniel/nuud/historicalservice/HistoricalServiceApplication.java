@@ -2,9 +2,11 @@ package daniel.nuud.historicalservice;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import reactor.blockhound.BlockHound;
 
 @SpringBootApplication
+@EnableScheduling
 public class HistoricalServiceApplication {
 
     static {
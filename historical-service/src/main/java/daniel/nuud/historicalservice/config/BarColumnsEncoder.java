@@ -0,0 +1,97 @@
+package daniel.nuud.historicalservice.config;
+
+import daniel.nuud.historicalservice.dto.BarColumns;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.AbstractEncoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.lang.Nullable;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * application/x-bar-columns — BarColumns в little-endian раскладке, которую браузер читает
+ * через DataView/TypedArray без парсинга. Все секции выровнены на 8 байт:
+ * <pre>
+ * "BARC" | u16 version=1 | u16 flags | i32 count | i32 tickerLen | ticker UTF-8
+ * i64 t0 | deltas: u32[count] (i64[count], если flags & 1), deltas[0] = 0
+ * f32 open[count] | f32 high[count] | f32 low[count] | f32 close[count] | f64 volume[count]
+ * </pre>
+ */
+public class BarColumnsEncoder extends AbstractEncoder<BarColumns> {
+
+    private static final int VERSION = 1;
+    private static final int WIDE_DELTAS = 1;
+
+    public BarColumnsEncoder() {
+        super(MimeType.valueOf(BarColumns.COLUMNS_VALUE));
+    }
+
+    @Override
+    public boolean canEncode(ResolvableType elementType, @Nullable MimeType mimeType) {
+        return BarColumns.class.isAssignableFrom(elementType.toClass()) && super.canEncode(elementType, mimeType);
+    }
+
+    @Override
+    public Flux<DataBuffer> encode(Publisher<? extends BarColumns> input, DataBufferFactory bufferFactory,
+                                   ResolvableType elementType, @Nullable MimeType mimeType,
+                                   @Nullable Map<String, Object> hints) {
+        return Flux.from(input).map(c -> encodeValue(c, bufferFactory, elementType, mimeType, hints));
+    }
+
+    @Override
+    public DataBuffer encodeValue(BarColumns cols, DataBufferFactory bufferFactory, ResolvableType valueType,
+                                  @Nullable MimeType mimeType, @Nullable Map<String, Object> hints) {
+        final int n = cols.count();
+        final byte[] ticker = cols.ticker().getBytes(StandardCharsets.UTF_8);
+
+        boolean wide = false;
+        for (int i = 1; i < n; i++) {
+            if (cols.t()[i] < 0 || cols.t()[i] > 0xFFFF_FFFFL) {
+                wide = true;
+                break;
+            }
+        }
+
+        int size = 16 + align8(ticker.length) + 8 + align8(n * (wide ? 8 : 4)) + n * 16 + n * 8;
+        ByteBuffer buf = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+
+        buf.put((byte) 'B').put((byte) 'A').put((byte) 'R').put((byte) 'C');
+        buf.putShort((short) VERSION);
+        buf.putShort((short) (wide ? WIDE_DELTAS : 0));
+        buf.putInt(n);
+        buf.putInt(ticker.length);
+        buf.put(ticker);
+        pad(buf);
+
+        buf.putLong(n > 0 ? cols.t()[0] : 0);
+        for (int i = 0; i < n; i++) {
+            long d = i == 0 ? 0 : cols.t()[i];
+            if (wide) buf.putLong(d);
+            else buf.putInt((int) d);
+        }
+        pad(buf);
+
+        for (float x : cols.o()) buf.putFloat(x);
+        for (float x : cols.h()) buf.putFloat(x);
+        for (float x : cols.l()) buf.putFloat(x);
+        for (float x : cols.c()) buf.putFloat(x);
+        for (long x : cols.v()) buf.putDouble(x);
+
+        return bufferFactory.wrap(buf.array());
+    }
+
+    private static int align8(int len) {
+        return (len + 7) & ~7;
+    }
+
+    private static void pad(ByteBuffer buf) {
+        while ((buf.position() & 7) != 0) buf.put((byte) 0);
+    }
+}
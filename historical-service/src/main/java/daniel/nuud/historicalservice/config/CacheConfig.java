@@ -0,0 +1,47 @@
+package daniel.nuud.historicalservice.config;
+
+import daniel.nuud.historicalservice.model.Period;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+@Configuration
+@EnableConfigurationProperties(CacheConfig.AggregatesCacheProps.class)
+public class CacheConfig {
+
+    @Getter
+    @Setter
+    @ConfigurationProperties(prefix = "historical.cache")
+    public static class AggregatesCacheProps {
+        /** Ёмкость in-process кэша в барах (сумма results по всем ответам). */
+        private long maxBars = 500_000;
+        private boolean redisEnabled = true;
+        /** TTL ответа Polygon по периоду графика. */
+        private Map<Period, Duration> ttl = new EnumMap<>(Period.class);
+
+        public Duration ttlFor(Period period) {
+            return ttl.getOrDefault(period, Duration.ofMinutes(1));
+        }
+    }
+
+    @Bean
+    public ReactiveRedisTemplate<String, String> reactiveRedisTemplate(ReactiveRedisConnectionFactory factory) {
+        RedisSerializationContext<String, String> serializationContext = RedisSerializationContext
+                .<String, String>newSerializationContext(RedisSerializer.string())
+                .value(RedisSerializer.string())
+                .build();
+
+        return new ReactiveRedisTemplate<>(factory, serializationContext);
+    }
+}
@@ -0,0 +1,17 @@
+package daniel.nuud.historicalservice.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.codec.cbor.Jackson2CborEncoder;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+
+/** Бинарные форматы графика: CBOR и колоночная раскладка BarColumns. JSON остаётся по умолчанию. */
+@Configuration
+public class CodecConfig implements WebFluxConfigurer {
+
+    @Override
+    public void configureHttpMessageCodecs(ServerCodecConfigurer configurer) {
+        configurer.customCodecs().register(new BarColumnsEncoder());
+        configurer.customCodecs().register(new Jackson2CborEncoder());
+    }
+}
@@ -1,14 +1,20 @@
 package daniel.nuud.historicalservice.controller;
 
+import daniel.nuud.historicalservice.dto.BarColumns;
+import daniel.nuud.historicalservice.dto.BatchBarsRequest;
 import daniel.nuud.historicalservice.dto.StockPrice;
 import daniel.nuud.historicalservice.model.StockBar;
 import daniel.nuud.historicalservice.service.HistoricalService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 @RestController
 @RequestMapping("/api/historical")
 @RequiredArgsConstructor
@@ -19,8 +25,42 @@ public class HistoricalController {
     @GetMapping("/{ticker}")
     public Flux<StockBar> getStockBar(@RequestParam String period,
                                       @PathVariable String ticker,
+                                      @RequestParam(required = false) Integer maxPoints,
                                       @RequestHeader(value = "X-User-Key", defaultValue = "guest") String userKey) {
-        return historicalService.getHistoricalStockBar(ticker, period, userKey);
+        return historicalService.getHistoricalStockBar(ticker, period, userKey, maxPoints);
+    }
+
+    /** Тот же график построчно (application/x-ndjson): бары уходят клиенту по мере загрузки, без сборки в массив. */
+    @GetMapping(value = "/{ticker}", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<StockBar> streamStockBar(@RequestParam String period,
+                                         @PathVariable String ticker,
+                                         @RequestParam(required = false) Integer maxPoints,
+                                         @RequestHeader(value = "X-User-Key", defaultValue = "guest") String userKey) {
+        return historicalService.getHistoricalStockBar(ticker, period, userKey, maxPoints);
+    }
+
+    /** Тот же график колонками: Accept: application/cbor или application/x-bar-columns. */
+    @GetMapping(value = "/{ticker}", produces = {BarColumns.CBOR_VALUE, BarColumns.COLUMNS_VALUE})
+    public Mono<BarColumns> getStockBarColumns(@RequestParam String period,
+                                               @PathVariable String ticker,
+                                               @RequestParam(required = false) Integer maxPoints,
+                                               @RequestHeader(value = "X-User-Key", defaultValue = "guest") String userKey) {
+        return historicalService.getHistoricalColumns(ticker, period, userKey, maxPoints);
+    }
+
+    /** Несколько тикеров за произвольный диапазон одним ответом: NDJSON по мере загрузки или JSON-массив. */
+    @PostMapping(value = "/batch", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public Mono<ResponseEntity<Flux<StockBar>>> getBatch(@RequestBody BatchBarsRequest request) {
+        return Mono.fromCallable(() -> historicalService.getBatchBars(
+                        request.tickers(),
+                        request.from(),
+                        request.to(),
+                        request.timespan(),
+                        request.multiplier() == null ? 1 : request.multiplier(),
+                        request.maxPoints()))
+                .map(ResponseEntity::ok)
+                .onErrorResume(IllegalArgumentException.class,
+                        e -> Mono.just(ResponseEntity.badRequest().build()));
     }
 
     @PostMapping("/realtime")
@@ -28,4 +68,10 @@ public class HistoricalController {
     public Mono<Void> receiveRealtimePrice(@RequestBody StockPrice stockPrice) {
         return Mono.fromRunnable(() -> historicalService.saveRealtimePrice(stockPrice));
     }
+
+    @PostMapping("/realtime/batch")
+    @ResponseStatus(HttpStatus.OK)
+    public Mono<Void> receiveRealtimePrices(@RequestBody List<StockPrice> stockPrices) {
+        return Mono.fromRunnable(() -> historicalService.saveRealtimePrices(stockPrices));
+    }
 }
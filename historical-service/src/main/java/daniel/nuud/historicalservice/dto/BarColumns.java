@@ -0,0 +1,68 @@
+package daniel.nuud.historicalservice.dto;
+
+import java.util.Arrays;
+
+/**
+ * Бары графика в колоночном виде для бинарных ответов (CBOR и application/x-bar-columns).
+ * t[0] — абсолютный timestamp первого бара (мс), t[i] — разница с предыдущим; цены — float32.
+ */
+public record BarColumns(
+        String ticker,
+        int count,
+        long[] t,
+        float[] o,
+        float[] h,
+        float[] l,
+        float[] c,
+        long[] v
+) {
+    public static final String CBOR_VALUE = "application/cbor";
+    public static final String COLUMNS_VALUE = "application/x-bar-columns";
+
+    /** Накопитель с растущими примитивными массивами. */
+    public static final class Collector {
+        private final String ticker;
+        private int n;
+        private long prevTs;
+        private long[] t = new long[256];
+        private float[] o = new float[256];
+        private float[] h = new float[256];
+        private float[] l = new float[256];
+        private float[] c = new float[256];
+        private long[] v = new long[256];
+
+        public Collector(String ticker) {
+            this.ticker = ticker;
+        }
+
+        public void add(StockBarApi bar) {
+            if (bar.getTimestamp() == null || bar.getClosePrice() == null) return;
+            if (n == t.length) grow();
+            long ts = bar.getTimestamp();
+            t[n] = n == 0 ? ts : ts - prevTs;
+            prevTs = ts;
+            c[n] = bar.getClosePrice().floatValue();
+            o[n] = bar.getOpenPrice() == null ? c[n] : bar.getOpenPrice().floatValue();
+            h[n] = bar.getHighPrice() == null ? c[n] : bar.getHighPrice().floatValue();
+            l[n] = bar.getLowPrice() == null ? c[n] : bar.getLowPrice().floatValue();
+            v[n] = bar.getVolume() == null ? 0 : bar.getVolume();
+            n++;
+        }
+
+        public BarColumns build() {
+            return new BarColumns(ticker, n,
+                    Arrays.copyOf(t, n), Arrays.copyOf(o, n), Arrays.copyOf(h, n),
+                    Arrays.copyOf(l, n), Arrays.copyOf(c, n), Arrays.copyOf(v, n));
+        }
+
+        private void grow() {
+            int cap = t.length << 1;
+            t = Arrays.copyOf(t, cap);
+            o = Arrays.copyOf(o, cap);
+            h = Arrays.copyOf(h, cap);
+            l = Arrays.copyOf(l, cap);
+            c = Arrays.copyOf(c, cap);
+            v = Arrays.copyOf(v, cap);
+        }
+    }
+}
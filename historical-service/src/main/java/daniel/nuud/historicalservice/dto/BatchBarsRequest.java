@@ -0,0 +1,18 @@
+package daniel.nuud.historicalservice.dto;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Тело POST /api/historical/batch. to позже сегодняшнего дня обрезается до сегодня;
+ * timespan — minute/hour/day/week/month/quarter/year (по умолчанию day), multiplier по умолчанию 1.
+ */
+public record BatchBarsRequest(
+        List<String> tickers,
+        LocalDate from,
+        LocalDate to,
+        String timespan,
+        Integer multiplier,
+        Integer maxPoints
+) {
+}
@@ -0,0 +1,19 @@
+package daniel.nuud.historicalservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import java.time.LocalDate;
+
+@Data
+public class SplitApi {
+
+    @JsonProperty("execution_date")
+    private LocalDate executionDate;
+
+    @JsonProperty("split_from")
+    private Double splitFrom;
+
+    @JsonProperty("split_to")
+    private Double splitTo;
+}
@@ -0,0 +1,12 @@
+package daniel.nuud.historicalservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class SplitsResponse {
+    @JsonProperty("results")
+    private List<SplitApi> results;
+}
@@ -25,7 +25,7 @@ public class StockBarApi {
     private Long timestamp;
 
     @JsonProperty("v")
-    private Integer volume;
+    private Long volume;
 
     @JsonProperty("vw")
     private Double volumeWeight;
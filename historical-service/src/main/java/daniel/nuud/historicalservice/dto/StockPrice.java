@@ -11,4 +11,28 @@ public class StockPrice {
     private String ticker;
     private double price;
     private long timestamp;
+    // объём, накопленный с прошлой отправки; 0 — если неизвестен
+    private double volume;
+    // начало бара (s) и его open/high/low; price — close, timestamp — конец бара (e).
+    // 0 — поле не прислали: тогда бар считается точкой с ценой price в момент timestamp - 1
+    private long start;
+    private double open;
+    private double high;
+    private double low;
+
+    public long barStart() {
+        return start > 0 ? start : timestamp - 1;
+    }
+
+    public double barOpen() {
+        return open > 0 ? open : price;
+    }
+
+    public double barHigh() {
+        return high > 0 ? high : price;
+    }
+
+    public double barLow() {
+        return low > 0 ? low : price;
+    }
 }
@@ -1,32 +1,58 @@
 package daniel.nuud.historicalservice.model;
 
+import daniel.nuud.historicalservice.dto.StockBarApi;
 import lombok.*;
 
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 
+/**
+ * Бар графика на примитивных полях: один объект на бар без обёрток Double/Integer/Long.
+ * id и date не хранятся, а выводятся из ticker и timestamp только при сериализации в JSON.
+ */
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-@Builder
 public class StockBar {
 
-    private String id;
-
     private String ticker;
-    private LocalDateTime date;
 
-    private Double closePrice;
+    private long timestamp;
+
+    private double openPrice;
+
+    private double highPrice;
+
+    private double lowPrice;
 
-    private Double lowPrice;
+    private double closePrice;
 
-    private Double highPrice;
+    private long volume;
 
-    private Double openPrice;
+    private int numberOfTransactions;
 
-    private Integer volume;
+    /** Бар из ответа Polygon; пропущенные open/high/low заменяются close, объёмы — нулём. */
+    public static StockBar of(String ticker, StockBarApi dto) {
+        double close = dto.getClosePrice();
+        return new StockBar(
+                ticker,
+                dto.getTimestamp(),
+                dto.getOpenPrice() == null ? close : dto.getOpenPrice(),
+                dto.getHighPrice() == null ? close : dto.getHighPrice(),
+                dto.getLowPrice() == null ? close : dto.getLowPrice(),
+                close,
+                dto.getVolume() == null ? 0L : dto.getVolume(),
+                dto.getNumberOfTransactions() == null ? 0 : dto.getNumberOfTransactions()
+        );
+    }
 
-    private Integer numberOfTransactions;
+    public String getId() {
+        return ticker + ":" + timestamp;
+    }
 
-    private Long timestamp;
+    public LocalDateTime getDate() {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneOffset.UTC);
+    }
 }
@@ -1,4 +1,8 @@
 package daniel.nuud.historicalservice.model;
 
 public record TimePreset(String multiplier, String timespan) {
+
+    public static final TimePreset FIVE_MINUTES = new TimePreset("5", "minute");
+    public static final TimePreset ONE_DAY = new TimePreset("1", "day");
+    public static final TimePreset ONE_WEEK = new TimePreset("1", "week");
 }
@@ -0,0 +1,141 @@
+package daniel.nuud.historicalservice.repository;
+
+import daniel.nuud.historicalservice.dto.StockBarApi;
+import daniel.nuud.historicalservice.model.TimePreset;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Локальное хранилище баров Polygon в Postgres: bars — сами бары по (ticker, multiplier, timespan, ts),
+ * bar_days — какие закрытые дни уже загружены целиком.
+ */
+@Repository
+@RequiredArgsConstructor
+public class BarStore {
+
+    // $1..$3 общие для всех строк, дальше по 7 параметров на строку; Postgres принимает до 65535 биндов
+    static final int MAX_UPSERT_ROWS = (65_535 - 3) / 7;
+
+    private final R2dbcEntityTemplate r2dbc;
+
+    public Flux<LocalDate> loadedDays(String ticker, TimePreset preset, LocalDate from, LocalDate to) {
+        return r2dbc.getDatabaseClient()
+                .sql("""
+                    select day from bar_days
+                    where ticker = $1 and multiplier = $2 and timespan = $3 and day between $4 and $5
+                    """)
+                .bind("$1", ticker)
+                .bind("$2", Integer.parseInt(preset.multiplier()))
+                .bind("$3", preset.timespan())
+                .bind("$4", from)
+                .bind("$5", to)
+                .map((row, meta) -> row.get("day", LocalDate.class))
+                .all();
+    }
+
+    public Mono<Long> markLoaded(String ticker, TimePreset preset, List<LocalDate> days) {
+        if (days.isEmpty()) return Mono.just(0L);
+
+        DatabaseClient.GenericExecuteSpec spec = r2dbc.getDatabaseClient().sql(markLoadedSql(days.size()))
+                .bind("$1", ticker)
+                .bind("$2", Integer.parseInt(preset.multiplier()))
+                .bind("$3", preset.timespan());
+        for (int i = 0; i < days.size(); i++) {
+            spec = spec.bind("$" + (i + 4), days.get(i));
+        }
+        return spec.fetch().rowsUpdated();
+    }
+
+    /**
+     * Вставить или перезаписать бары (сегодняшние бары ещё меняются) одним запросом.
+     * Пачки режет вызывающий (BarStoreService), здесь только проверка лимита биндов.
+     */
+    public Mono<Long> upsert(String ticker, TimePreset preset, List<StockBarApi> bars) {
+        if (bars.isEmpty()) return Mono.just(0L);
+        if (bars.size() > MAX_UPSERT_ROWS) {
+            return Mono.error(new IllegalArgumentException(
+                    "Upsert of " + bars.size() + " bars exceeds " + MAX_UPSERT_ROWS + " rows per statement"));
+        }
+
+        DatabaseClient.GenericExecuteSpec spec = r2dbc.getDatabaseClient().sql(upsertSql(bars.size()))
+                .bind("$1", ticker)
+                .bind("$2", Integer.parseInt(preset.multiplier()))
+                .bind("$3", preset.timespan());
+        for (int i = 0; i < bars.size(); i++) {
+            StockBarApi b = bars.get(i);
+            int p = i * 7 + 3;
+            spec = spec.bind("$" + (p + 1), b.getTimestamp())
+                    .bind("$" + (p + 2), b.getOpenPrice())
+                    .bind("$" + (p + 3), b.getHighPrice())
+                    .bind("$" + (p + 4), b.getLowPrice())
+                    .bind("$" + (p + 5), b.getClosePrice())
+                    .bind("$" + (p + 6), b.getVolume() == null ? 0L : b.getVolume())
+                    .bind("$" + (p + 7), b.getNumberOfTransactions() == null ? 0 : b.getNumberOfTransactions());
+        }
+        return spec.fetch().rowsUpdated();
+    }
+
+    public Flux<StockBarApi> range(String ticker, TimePreset preset, long fromTs, long toTs) {
+        return r2dbc.getDatabaseClient()
+                .sql("""
+                    select ts, open, high, low, close, volume, transactions from bars
+                    where ticker = $1 and multiplier = $2 and timespan = $3 and ts between $4 and $5
+                    order by ts
+                    """)
+                .bind("$1", ticker)
+                .bind("$2", Integer.parseInt(preset.multiplier()))
+                .bind("$3", preset.timespan())
+                .bind("$4", fromTs)
+                .bind("$5", toTs)
+                .map((row, meta) -> {
+                    StockBarApi bar = new StockBarApi();
+                    bar.setTimestamp(row.get("ts", Long.class));
+                    bar.setOpenPrice(row.get("open", Double.class));
+                    bar.setHighPrice(row.get("high", Double.class));
+                    bar.setLowPrice(row.get("low", Double.class));
+                    bar.setClosePrice(row.get("close", Double.class));
+                    Long volume = row.get("volume", Long.class);
+                    bar.setVolume(volume == null ? 0L : volume);
+                    bar.setNumberOfTransactions(row.get("transactions", Integer.class));
+                    return bar;
+                })
+                .all();
+    }
+
+    /** INSERT дней: $1..$3 — ticker/multiplier/timespan, дальше по параметру на день. */
+    static String markLoadedSql(int days) {
+        StringBuilder sql = new StringBuilder("insert into bar_days (ticker, multiplier, timespan, day) values ");
+        for (int i = 0; i < days; i++) {
+            if (i > 0) sql.append(", ");
+            sql.append("($1, $2, $3, $").append(i + 4).append(')');
+        }
+        return sql.append(" on conflict do nothing").toString();
+    }
+
+    /** UPSERT баров: $1..$3 общие для всех строк, дальше по 7 параметров на бар. */
+    static String upsertSql(int rows) {
+        StringBuilder sql = new StringBuilder("""
+            insert into bars (ticker, multiplier, timespan, ts, open, high, low, close, volume, transactions)
+            values
+            """);
+        for (int i = 0; i < rows; i++) {
+            int p = i * 7;
+            if (i > 0) sql.append(", ");
+            sql.append("($1, $2, $3");
+            for (int c = 1; c <= 7; c++) sql.append(", $").append(p + c + 3);
+            sql.append(')');
+        }
+        return sql.append("""
+             on conflict (ticker, multiplier, timespan, ts) do update set
+                open = excluded.open, high = excluded.high, low = excluded.low, close = excluded.close,
+                volume = excluded.volume, transactions = excluded.transactions
+            """).toString();
+    }
+}
@@ -0,0 +1,160 @@
+package daniel.nuud.historicalservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import daniel.nuud.historicalservice.config.CacheConfig.AggregatesCacheProps;
+import daniel.nuud.historicalservice.dto.ApiResponse;
+import daniel.nuud.historicalservice.model.Period;
+import daniel.nuud.historicalservice.model.TimePreset;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Двухуровневый кэш ответов Polygon /v2/aggs перед PolygonClient.
+ * L1 — in-process Caffeine с вытеснением по числу баров, L2 — Redis, общий для инстансов.
+ * TTL зависит от периода: свежие внутридневные ряды живут секунды, многолетние — часы.
+ * Одновременные промахи по одному ключу ждут один и тот же запрос (общий future в L1).
+ */
+@Slf4j
+@Component
+public class AggregatesCache {
+
+    /** Ключ запроса агрегатов; период нужен только для выбора TTL. */
+    public record Key(String ticker, Period period, TimePreset preset, LocalDate from, LocalDate to, boolean adjusted) {
+        String redisKey() {
+            return "hist:aggs:" + ticker + ":" + preset.multiplier() + ":" + preset.timespan() + ":" + from + ":" + to
+                    + (adjusted ? ":adj" : ":raw");
+        }
+    }
+
+    private final PolygonClient polygonClient;
+    private final ReactiveRedisTemplate<String, String> redis;
+    private final ObjectMapper mapper;
+    private final AggregatesCacheProps props;
+
+    private final AsyncCache<Key, ApiResponse> local;
+    private final Counter redisHits;
+    private final Counter upstreamCalls;
+
+    public AggregatesCache(PolygonClient polygonClient,
+                           ReactiveRedisTemplate<String, String> redis,
+                           ObjectMapper mapper,
+                           AggregatesCacheProps props,
+                           MeterRegistry registry) {
+        this.polygonClient = polygonClient;
+        this.redis = redis;
+        this.mapper = mapper;
+        this.props = props;
+
+        this.local = Caffeine.newBuilder()
+                .maximumWeight(props.getMaxBars())
+                .weigher((Key k, ApiResponse v) -> v.getResults() == null ? 1 : Math.max(1, v.getResults().size()))
+                .expireAfter(new Expiry<Key, ApiResponse>() {
+                    @Override
+                    public long expireAfterCreate(Key key, ApiResponse value, long currentTime) {
+                        return props.ttlFor(key.period()).toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(Key key, ApiResponse value, long currentTime, long currentDuration) {
+                        return props.ttlFor(key.period()).toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterRead(Key key, ApiResponse value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .buildAsync();
+
+        CaffeineCacheMetrics.monitor(registry, local.synchronous(), "historical.aggregates");
+        this.redisHits = Counter.builder("historical.aggregates.redis.hits")
+                .description("Aggregate responses served from Redis after an L1 miss")
+                .register(registry);
+        this.upstreamCalls = Counter.builder("historical.aggregates.upstream.calls")
+                .description("Aggregate requests that reached Polygon")
+                .register(registry);
+    }
+
+    public Mono<ApiResponse> get(Key key, String apiKey) {
+        // отмена одного подписчика не должна отменять общий запрос остальных
+        return Mono.fromFuture(() -> local.get(key, (k, executor) -> load(k, apiKey).toFuture()), true);
+    }
+
+    /** Осталась ли записи L1 последняя доля fraction её TTL (или записи нет вовсе). */
+    public boolean expiresWithin(Key key, double fraction) {
+        Duration within = Duration.ofNanos((long) (props.ttlFor(key.period()).toNanos() * fraction));
+        return local.synchronous().policy().expireVariably()
+                .flatMap(p -> p.getExpiresAfter(key))
+                .map(left -> left.compareTo(within) <= 0)
+                .orElse(true);
+    }
+
+    /** Перезапросить ключ из Polygon мимо L1/L2; до прихода ответа читатели получают прежнее значение. */
+    public Mono<Void> refresh(Key key, String apiKey) {
+        return fetch(key, apiKey)
+                .doOnNext(resp -> local.put(key, CompletableFuture.completedFuture(resp)))
+                .then();
+    }
+
+    private Mono<ApiResponse> load(Key key, String apiKey) {
+        return readRedis(key)
+                .switchIfEmpty(Mono.defer(() -> fetch(key, apiKey)));
+    }
+
+    private Mono<ApiResponse> fetch(Key key, String apiKey) {
+        upstreamCalls.increment();
+        return polygonClient.getAggregates(
+                        key.ticker(),
+                        key.preset().multiplier(),
+                        key.preset().timespan(),
+                        key.from(),
+                        key.to(),
+                        key.adjusted(),
+                        apiKey)
+                .flatMap(resp -> writeRedis(key, resp).thenReturn(resp));
+    }
+
+    private Mono<ApiResponse> readRedis(Key key) {
+        if (!props.isRedisEnabled()) return Mono.empty();
+        return redis.opsForValue().get(key.redisKey())
+                .publishOn(Schedulers.boundedElastic())
+                .map(json -> {
+                    try {
+                        return mapper.readValue(json, ApiResponse.class);
+                    } catch (Exception e) {
+                        throw new IllegalStateException("Corrupt cached aggregates " + key.redisKey(), e);
+                    }
+                })
+                .doOnNext(r -> redisHits.increment())
+                // Redis недоступен или запись битая — идём в Polygon
+                .onErrorResume(e -> {
+                    log.debug("Redis read failed for {}: {}", key.redisKey(), e.toString());
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<Void> writeRedis(Key key, ApiResponse resp) {
+        if (!props.isRedisEnabled()) return Mono.empty();
+        return Mono.fromCallable(() -> mapper.writeValueAsString(resp))
+                .flatMap(json -> redis.opsForValue().set(key.redisKey(), json, props.ttlFor(key.period())))
+                .then()
+                .onErrorResume(e -> {
+                    log.debug("Redis write failed for {}: {}", key.redisKey(), e.toString());
+                    return Mono.empty();
+                });
+    }
+}
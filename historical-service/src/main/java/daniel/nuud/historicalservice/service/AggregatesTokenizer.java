@@ -0,0 +1,90 @@
+package daniel.nuud.historicalservice.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import daniel.nuud.historicalservice.dto.StockBarApi;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Инкрементальный разбор ответа Polygon /v2/aggs на неблокирующем парсере Jackson.
+ * Байты подаются кусками по мере прихода; наружу отдаются уже полностью прочитанные элементы
+ * массива results. Весь ответ целиком в памяти не держится — только текущий бар.
+ * Один экземпляр на ответ, не потокобезопасен.
+ */
+final class AggregatesTokenizer {
+
+    private final ObjectMapper mapper;
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+
+    private int depth;
+    private boolean expectResults;
+    private int resultsDepth = -1;
+    private TokenBuffer bar;
+
+    AggregatesTokenizer(ObjectMapper mapper) {
+        this.mapper = mapper;
+        try {
+            this.parser = mapper.getFactory().createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+    }
+
+    List<StockBarApi> feed(byte[] bytes) {
+        try {
+            feeder.feedInput(bytes, 0, bytes.length);
+            return drain();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    List<StockBarApi> end() {
+        feeder.endOfInput();
+        try {
+            return drain();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private List<StockBarApi> drain() throws IOException {
+        List<StockBarApi> out = new ArrayList<>();
+        JsonToken t;
+        while ((t = parser.nextToken()) != null && t != JsonToken.NOT_AVAILABLE) {
+            if (t.isStructStart()) depth++;
+
+            if (bar != null) {
+                bar.copyCurrentEvent(parser);
+                if (t == JsonToken.END_OBJECT && depth == resultsDepth + 1) {
+                    out.add(mapper.readValue(bar.asParser(mapper), StockBarApi.class));
+                    bar = null;
+                }
+            } else if (t == JsonToken.START_OBJECT && resultsDepth > 0 && depth == resultsDepth + 1) {
+                bar = new TokenBuffer(parser);
+                bar.copyCurrentEvent(parser);
+            } else if (t == JsonToken.FIELD_NAME && depth == 1) {
+                expectResults = "results".equals(parser.currentName());
+            } else if (t == JsonToken.START_ARRAY && expectResults && depth == 2) {
+                resultsDepth = depth;
+                expectResults = false;
+            } else if (t == JsonToken.END_ARRAY && depth == resultsDepth) {
+                resultsDepth = -1;
+            } else {
+                expectResults = false;
+            }
+
+            if (t.isStructEnd()) depth--;
+        }
+        return out;
+    }
+}
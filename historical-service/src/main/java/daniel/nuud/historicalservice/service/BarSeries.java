@@ -0,0 +1,164 @@
+package daniel.nuud.historicalservice.service;
+
+import daniel.nuud.historicalservice.dto.StockBarApi;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Ограниченный ряд OHLCV-баров одного тикера, собранный из realtime-баров stocks-service.
+ * Бар ключуется началом, как в REST Polygon: входящий бар попадает в корзину по своему началу (s),
+ * а не по концу. Корзины — фиксированный шаг от эпохи (минуты) или календарный день биржи.
+ * Бары лежат в кольце на примитивных массивах; при переполнении вытесняется самый старый.
+ * Не потокобезопасен — синхронизацию делает IntradayBars.
+ */
+final class BarSeries {
+
+    private final LongUnaryOperator bucketOf;
+    private final int capacity;
+
+    private final long[] ts;
+    private final double[] open;
+    private final double[] high;
+    private final double[] low;
+    private final double[] close;
+    private final double[] volume;
+    private final int[] ticks;
+    private int head;   // индекс самого старого бара
+    private int size;
+
+    /** Корзины фиксированной длины spanMs от эпохи. */
+    static BarSeries fixed(long spanMs, int capacity) {
+        return new BarSeries(ts -> ts - Math.floorMod(ts, spanMs), capacity);
+    }
+
+    /** Корзина — календарный день в зоне биржи; начало дня как у дневных баров Polygon. */
+    static BarSeries days(ZoneId zone, int capacity) {
+        return new BarSeries(new ZoneDays(zone), capacity);
+    }
+
+    private BarSeries(LongUnaryOperator bucketOf, int capacity) {
+        this.bucketOf = bucketOf;
+        this.capacity = capacity;
+        this.ts = new long[capacity];
+        this.open = new double[capacity];
+        this.high = new double[capacity];
+        this.low = new double[capacity];
+        this.close = new double[capacity];
+        this.volume = new double[capacity];
+        this.ticks = new int[capacity];
+    }
+
+    /** Свернуть входящий бар с началом start в корзину этого ряда. */
+    void add(long start, double o, double h, double l, double c, double vol) {
+        long bucket = bucketOf.applyAsLong(start);
+        double v = vol > 0 ? vol : 0;
+
+        if (size > 0) {
+            int last = slot(size - 1);
+            if (bucket == ts[last]) {
+                update(last, h, l, c, v, true);
+                return;
+            }
+            if (bucket < ts[last]) {
+                // опоздавший бар: дополняем его корзину, если она ещё в буфере, но close не трогаем
+                int i = find(bucket);
+                if (i >= 0) update(i, h, l, c, v, false);
+                return;
+            }
+        }
+
+        int s;
+        if (size < capacity) {
+            s = slot(size++);
+        } else {
+            s = head;
+            head = (head + 1) % capacity;
+        }
+        ts[s] = bucket;
+        open[s] = o;
+        high[s] = h;
+        low[s] = l;
+        close[s] = c;
+        volume[s] = v;
+        ticks[s] = 1;
+    }
+
+    /** Бары с началом строго после afterTs, от старых к новым. */
+    List<StockBarApi> after(long afterTs) {
+        int from = size;
+        for (int lo = 0, hi = size; lo < hi; ) {
+            int mid = (lo + hi) >>> 1;
+            if (ts[slot(mid)] > afterTs) {
+                from = mid;
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+
+        List<StockBarApi> out = new ArrayList<>(size - from);
+        for (int k = from; k < size; k++) {
+            int s = slot(k);
+            StockBarApi bar = new StockBarApi();
+            bar.setTimestamp(ts[s]);
+            bar.setOpenPrice(open[s]);
+            bar.setHighPrice(high[s]);
+            bar.setLowPrice(low[s]);
+            bar.setClosePrice(close[s]);
+            bar.setVolume(Math.round(volume[s]));
+            bar.setNumberOfTransactions(ticks[s]);
+            out.add(bar);
+        }
+        return out;
+    }
+
+    private void update(int s, double h, double l, double c, double v, boolean latest) {
+        if (h > high[s]) high[s] = h;
+        if (l < low[s]) low[s] = l;
+        if (latest) close[s] = c;
+        volume[s] += v;
+        ticks[s]++;
+    }
+
+    /** Слот бара с началом bucket или -1. */
+    private int find(long bucket) {
+        int lo = 0, hi = size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long t = ts[slot(mid)];
+            if (t == bucket) return slot(mid);
+            if (t < bucket) lo = mid + 1;
+            else hi = mid - 1;
+        }
+        return -1;
+    }
+
+    private int slot(int k) {
+        return (head + k) % capacity;
+    }
+
+    /** Начало календарного дня в зоне; границы текущего дня кэшируются, чтобы не считать зону на каждый бар. */
+    private static final class ZoneDays implements LongUnaryOperator {
+        private final ZoneId zone;
+        private long from = 1;
+        private long to = 0;
+
+        ZoneDays(ZoneId zone) {
+            this.zone = zone;
+        }
+
+        @Override
+        public long applyAsLong(long ts) {
+            if (ts >= from && ts < to) return from;
+            LocalDate day = Instant.ofEpochMilli(ts).atZone(zone).toLocalDate();
+            from = day.atStartOfDay(zone).toInstant().toEpochMilli();
+            to = day.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+            return from;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package daniel.nuud.historicalservice.service;
+
+import daniel.nuud.historicalservice.dto.ApiResponse;
+import daniel.nuud.historicalservice.dto.StockBarApi;
+import daniel.nuud.historicalservice.model.Period;
+import daniel.nuud.historicalservice.model.TimePreset;
+import daniel.nuud.historicalservice.repository.BarStore;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Отдаёт бары из локального хранилища и догружает из Polygon только недостающие дни.
+ * Диапазон режется на отрезки: загруженные дни читаются из bars, закрытые незагруженные
+ * стримятся из Polygon с записью в bars пачками по мере разбора ответа и затем помечаются в bar_days,
+ * ещё не закрытый день всегда берётся через AggregatesCache и не сохраняется. Дни — даты America/New_York,
+ * как у Polygon; день закрыт после конца вечерней сессии (PeriodResolver.firstOpenDay).
+ * Одновременные догрузки одного и того же отрезка (график, батч, прогрев) делят один запрос к Polygon.
+ * Отрезки отдаются по порядку, поэтому первые бары уходят клиенту до конца многолетней загрузки.
+ * В bars лежат цены без поправки на сплиты; поправка накладывается при чтении (SplitAdjustments),
+ * сегодняшним барам она не нужна.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BarStoreService {
+
+    // строк в одном upsert: 3 + 7 * 500 биндов, далеко от лимита Postgres (BarStore.MAX_UPSERT_ROWS)
+    private static final int UPSERT_CHUNK = 500;
+    // только канонические шаги: произвольный multiplier завёл бы в bars по отдельному ряду на каждое значение
+    private static final Set<TimePreset> STORED_PRESETS = Set.of(
+            new TimePreset("1", "minute"), TimePreset.FIVE_MINUTES, new TimePreset("1", "hour"), TimePreset.ONE_DAY);
+
+    private enum Source { STORE, POLYGON, LIVE }
+
+    private record Segment(Source source, LocalDate from, LocalDate to) {}
+
+    private record FillKey(String ticker, TimePreset preset, LocalDate from, LocalDate to) {}
+
+    private final BarStore barStore;
+    private final AggregatesCache aggregatesCache;
+    private final PolygonClient polygonClient;
+    private final SplitAdjustments splitAdjustments;
+    private final PeriodResolver periodResolver;
+
+    // догрузки из Polygon, которые выполняются прямо сейчас
+    private final Map<FillKey, Flux<StockBarApi>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Храним 1m, 5m, 1h и 1d. Недельные и более крупные бары меняются до конца своего интервала,
+     * прочие шаги запрашиваются редко — и те, и другие идут через AggregatesCache.
+     */
+    public boolean supports(TimePreset preset) {
+        return STORED_PRESETS.contains(preset);
+    }
+
+    public Flux<StockBarApi> bars(String ticker, TimePreset preset, LocalDate from, LocalDate to, String apiKey) {
+        final LocalDate open = periodResolver.firstOpenDay();
+
+        return barStore.loadedDays(ticker, preset, from, to)
+                .collect(HashSet<LocalDate>::new, Set::add)
+                .flatMapMany(loaded -> Flux.fromIterable(segments(from, to, loaded, open)))
+                .concatMap(seg -> switch (seg.source()) {
+                    case STORE -> splitAdjustments.adjust(ticker,
+                            barStore.range(ticker, preset,
+                                    PeriodResolver.startOf(seg.from()), PeriodResolver.startOf(seg.to().plusDays(1)) - 1));
+                    case POLYGON -> sharedFill(ticker, preset, seg, apiKey);
+                    case LIVE -> aggregatesCache.get(liveKey(ticker, preset, seg.from()), apiKey)
+                            .flatMapIterable(BarStoreService::validResults);
+                });
+    }
+
+    /** Догрузить незагруженные закрытые дни [from, to], ничего не читая из хранилища. */
+    public Mono<Void> prefetch(String ticker, TimePreset preset, LocalDate from, LocalDate to, String apiKey) {
+        final LocalDate open = periodResolver.firstOpenDay();
+
+        return barStore.loadedDays(ticker, preset, from, to)
+                .collect(HashSet<LocalDate>::new, Set::add)
+                .flatMapMany(loaded -> Flux.fromIterable(segments(from, to, loaded, open)))
+                .filter(seg -> seg.source() == Source.POLYGON)
+                .concatMap(seg -> sharedFill(ticker, preset, seg, apiKey))
+                .then();
+    }
+
+    /**
+     * Ключ AggregatesCache, под которым bars() берёт сегодняшний день. Период всегда TODAY:
+     * сегодняшние бары одни и те же для любого графика, поэтому и запись кэша у них общая.
+     */
+    public AggregatesCache.Key liveKey(String ticker, TimePreset preset, LocalDate today) {
+        return new AggregatesCache.Key(ticker, Period.TODAY, preset, today, today, false);
+    }
+
+    /** Догрузка отрезка с поправкой на сплиты; параллельные запросы того же отрезка подписываются на неё же. */
+    private Flux<StockBarApi> sharedFill(String ticker, TimePreset preset, Segment seg, String apiKey) {
+        FillKey key = new FillKey(ticker, preset, seg.from(), seg.to());
+
+        return Flux.defer(() -> inFlight.computeIfAbsent(key, k -> {
+            // запись убирается по завершении, но только своя — её мог уже заменить следующий запрос
+            // сплиты правят бар на месте, поэтому поправка внутри общего потока — ровно один раз
+            AtomicReference<Flux<StockBarApi>> self = new AtomicReference<>();
+            self.set(splitAdjustments.adjust(ticker, fill(ticker, preset, seg, apiKey))
+                    .doFinally(s -> inFlight.remove(k, self.get()))
+                    .replay()
+                    .refCount());
+            return self.get();
+        }));
+    }
+
+    /** Закрытые дни: бары идут дальше по мере разбора ответа, в bars пишутся пачками до выдачи. */
+    private Flux<StockBarApi> fill(String ticker, TimePreset preset, Segment seg, String apiKey) {
+        final AtomicInteger count = new AtomicInteger();
+
+        Flux<StockBarApi> streamed = polygonClient
+                .streamAggregates(ticker, preset.multiplier(), preset.timespan(), seg.from(), seg.to(), false, apiKey)
+                .filter(BarStoreService::valid)
+                .doOnNext(b -> count.incrementAndGet())
+                .buffer(UPSERT_CHUNK)
+                .concatMap(chunk -> barStore.upsert(ticker, preset, chunk).thenMany(Flux.fromIterable(chunk)));
+
+        return streamed.concatWith(Mono.defer(() -> {
+            if (count.get() >= PolygonClient.PAGE_LIMIT) {
+                // ответ мог быть обрезан — дни не помечаем, чтобы дозагрузить в следующий раз
+                log.warn("Polygon page limit hit for {} {}..{}, days left unmarked", ticker, seg.from(), seg.to());
+                return Mono.<StockBarApi>empty();
+            }
+            List<LocalDate> days = new ArrayList<>();
+            for (LocalDate d = seg.from(); !d.isAfter(seg.to()); d = d.plusDays(1)) days.add(d);
+            return barStore.markLoaded(ticker, preset, days)
+                    .doOnSuccess(v -> log.debug("Filled {} {}..{} ({} bars)", ticker, seg.from(), seg.to(), count.get()))
+                    .then(Mono.<StockBarApi>empty());
+        }));
+    }
+
+    /** Непрерывные отрезки [from, to]: загруженные, незагруженные закрытые и отдельно дни начиная с open. */
+    private static List<Segment> segments(LocalDate from, LocalDate to, Set<LocalDate> loaded, LocalDate open) {
+        List<Segment> out = new ArrayList<>();
+        LocalDate start = null;
+        Source current = null;
+        for (LocalDate d = from; !d.isAfter(to); d = d.plusDays(1)) {
+            Source s = !d.isBefore(open) ? Source.LIVE : loaded.contains(d) ? Source.STORE : Source.POLYGON;
+            if (s != current) {
+                if (current != null) out.add(new Segment(current, start, d.minusDays(1)));
+                start = d;
+                current = s;
+            }
+        }
+        if (current != null) out.add(new Segment(current, start, to));
+        return out;
+    }
+
+    private static List<StockBarApi> validResults(ApiResponse resp) {
+        if (resp == null || resp.getResults() == null) return List.of();
+        return resp.getResults().stream().filter(BarStoreService::valid).toList();
+    }
+
+    private static boolean valid(StockBarApi b) {
+        return b.getTimestamp() != null && b.getOpenPrice() != null && b.getHighPrice() != null
+                && b.getLowPrice() != null && b.getClosePrice() != null;
+    }
+}
@@ -0,0 +1,57 @@
+package daniel.nuud.historicalservice.service;
+
+import daniel.nuud.historicalservice.dto.StockBarApi;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+/**
+ * Прореживание баров для графика: диапазон [fromTs, toTs] делится на maxPoints равных по времени
+ * корзин, бары одной корзины сливаются в один с сохранением OHLC (open первого, close последнего,
+ * экстремумы и сумма объёма). Работает потоково — держит в памяти только текущую корзину.
+ */
+public final class Downsampler {
+
+    private Downsampler() {
+    }
+
+    public static Flux<StockBarApi> ohlcBuckets(Flux<StockBarApi> bars, long fromTs, long toTs, int maxPoints) {
+        if (maxPoints <= 0 || toTs <= fromTs) return bars;
+        // toTs входит в диапазон: при ceil-делении бар ровно на toTs открывал бы лишнюю корзину
+        final long width = (toTs - fromTs) / maxPoints + 1;
+
+        return bars
+                .bufferUntilChanged(b -> Math.floorDiv(b.getTimestamp() - fromTs, width))
+                .map(Downsampler::merge);
+    }
+
+    private static StockBarApi merge(List<StockBarApi> bucket) {
+        StockBarApi first = bucket.get(0);
+        if (bucket.size() == 1) return first;
+
+        double high = Double.NEGATIVE_INFINITY;
+        double low = Double.POSITIVE_INFINITY;
+        long volume = 0;
+        long transactions = 0;
+        for (StockBarApi b : bucket) {
+            high = Math.max(high, value(b.getHighPrice(), b.getClosePrice()));
+            low = Math.min(low, value(b.getLowPrice(), b.getClosePrice()));
+            if (b.getVolume() != null) volume += b.getVolume();
+            if (b.getNumberOfTransactions() != null) transactions += b.getNumberOfTransactions();
+        }
+
+        StockBarApi out = new StockBarApi();
+        out.setTimestamp(first.getTimestamp());
+        out.setOpenPrice(first.getOpenPrice());
+        out.setHighPrice(high);
+        out.setLowPrice(low);
+        out.setClosePrice(bucket.get(bucket.size() - 1).getClosePrice());
+        out.setVolume(volume);
+        out.setNumberOfTransactions((int) Math.min(Integer.MAX_VALUE, transactions));
+        return out;
+    }
+
+    private static double value(Double v, Double fallback) {
+        return v != null ? v : fallback;
+    }
+}
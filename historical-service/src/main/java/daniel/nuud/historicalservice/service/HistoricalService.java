@@ -1,69 +1,215 @@
 package daniel.nuud.historicalservice.service;
 
-import daniel.nuud.historicalservice.dto.ApiResponse;
+import daniel.nuud.historicalservice.dto.BarColumns;
 import daniel.nuud.historicalservice.dto.StockBarApi;
 import daniel.nuud.historicalservice.dto.StockPrice;
 import daniel.nuud.historicalservice.model.StockBar;
 import daniel.nuud.historicalservice.model.TimePreset;
 import daniel.nuud.historicalservice.model.Period;
+import daniel.nuud.historicalservice.model.Timespan;
 import daniel.nuud.historicalservice.notification.NotificationClient;
+import daniel.nuud.historicalservice.service.PeriodResolver.ChartRange;
+import jakarta.annotation.Nullable;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
 
-import java.time.*;
+import java.time.LocalDate;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class HistoricalService {
 
-    private final PolygonClient polygonClient;
+    private final AggregatesCache aggregatesCache;
+    private final BarStoreService barStoreService;
+    private final IntradayBars intradayBars;
     private final NotificationClient notificationClient;
+    private final PopularSeries popularSeries;
+    private final PeriodResolver periodResolver;
+
+    @Value("${historical.batch.max-tickers:50}")
+    private int batchMaxTickers;
+    @Value("${historical.batch.concurrency:4}")
+    private int batchConcurrency;
+    @Value("${historical.batch.max-multiplier:60}")
+    private int batchMaxMultiplier;
+    @Value("${historical.batch.max-minute-days:31}")
+    private int batchMaxMinuteDays;
+    @Value("${historical.batch.max-hour-days:730}")
+    private int batchMaxHourDays;
+    @Value("${historical.batch.max-day-days:7305}")
+    private int batchMaxDayDays;
+
+    private record BatchKey(String ticker, TimePreset preset, LocalDate from, LocalDate to, Integer maxPoints) {}
+
+    // подзапросы батчей, которые выполняются прямо сейчас
+    private final Map<BatchKey, Flux<StockBarApi>> inFlight = new ConcurrentHashMap<>();
 
     @Value("${polygon.api.key}")
     private String apiKey;
 
-    private static final ZoneId ZONE = ZoneOffset.UTC;
-
-    private final Map<String, StockPrice> latestPrices = new ConcurrentHashMap<>();
-
-    private final LocalDateTime toNow = LocalDateTime.now().with(LocalTime.MAX);
-
     public void saveRealtimePrice(StockPrice stockPrice) {
         log.info("Received real-time price: {}", stockPrice);
-        latestPrices.put(stockPrice.getTicker(), stockPrice);
+        intradayBars.add(normalize(stockPrice.getTicker()), stockPrice);
+    }
+
+    public void saveRealtimePrices(List<StockPrice> stockPrices) {
+        log.debug("Received {} real-time prices", stockPrices.size());
+        for (StockPrice p : stockPrices) {
+            intradayBars.add(normalize(p.getTicker()), p);
+        }
     }
 
     public Flux<StockBar> getHistoricalStockBar(String rawTicker, String period, String userKey) {
+        return getHistoricalStockBar(rawTicker, period, userKey, null);
+    }
+
+    /** maxPoints — если задан, бары сливаются по времени до не более чем maxPoints точек (с сохранением OHLC). */
+    public Flux<StockBar> getHistoricalStockBar(String rawTicker, String period, String userKey,
+                                                @Nullable Integer maxPoints) {
         final String ticker = normalize(rawTicker);
+        final Period p = Period.valueOf(period.toUpperCase(Locale.ROOT));
+        popularSeries.record(ticker, p);
+
+        return notifying(rawBars(ticker, periodResolver.resolve(p), maxPoints), userKey, ticker, period)
+                .filter(dto -> dto.getTimestamp() != null && dto.getClosePrice() != null)
+                .map(dto -> StockBar.of(ticker, dto));
+    }
 
+    /** Те же бары, что и getHistoricalStockBar, но одним колоночным объектом для бинарных форматов. */
+    public Mono<BarColumns> getHistoricalColumns(String rawTicker, String period, String userKey,
+                                                 @Nullable Integer maxPoints) {
+        final String ticker = normalize(rawTicker);
         final Period p = Period.valueOf(period.toUpperCase(Locale.ROOT));
-        final LocalDateTime fromDate = determinePeriod(p).with(LocalTime.MIN);
-        final TimePreset preset = determinePreset(period);
-        final LocalDate toNow = LocalDate.now(ZoneOffset.UTC);
-
-        return polygonClient.getAggregates(
-                        ticker,
-                        preset.multiplier(),
-                        preset.timespan(),
-                        fromDate.toLocalDate(),
-                        toNow,
-                        apiKey
-                )
-                .publishOn(Schedulers.boundedElastic())
-                .flatMapMany(resp -> {
-                    if (resp == null || resp.getResults() == null) return Flux.empty();
-                    return Flux.fromIterable(resp.getResults())
-                            .map(dto -> mapToEntity(ticker, dto));
-                })
-                .concatWith(appendLatestIfAny(ticker))
+        popularSeries.record(ticker, p);
+
+        return notifying(rawBars(ticker, periodResolver.resolve(p), maxPoints), userKey, ticker, period)
+                .collect(() -> new BarColumns.Collector(ticker), BarColumns.Collector::add)
+                .map(BarColumns.Collector::build);
+    }
+
+    /**
+     * Прогреть серию без уведомлений: перезапросить запись кэша, если от её TTL осталась доля refreshAhead
+     * или меньше, и догрузить в хранилище пропущенные закрытые дни.
+     */
+    public Mono<Void> warm(String ticker, Period p, double refreshAhead) {
+        final ChartRange range = periodResolver.resolve(p);
+        // вне сессии сегодняшние бары не меняются — обновлять записи с сегодняшним днём незачем
+        final boolean live = periodResolver.inSession();
+
+        if (barStoreService.supports(range.preset())) {
+            Mono<Void> today = live
+                    ? refreshIfExpiring(barStoreService.liveKey(ticker, range.preset(), range.to()), refreshAhead)
+                    : Mono.empty();
+            return today.then(barStoreService.prefetch(ticker, range.preset(), range.from(), range.to(), apiKey));
+        }
+        if (!live && range.toTs() > range.nowTs()) return Mono.empty();
+        return refreshIfExpiring(rangeKey(ticker, range), refreshAhead);
+    }
+
+    private Mono<Void> refreshIfExpiring(AggregatesCache.Key key, double refreshAhead) {
+        return aggregatesCache.expiresWithin(key, refreshAhead) ? aggregatesCache.refresh(key, apiKey) : Mono.empty();
+    }
+
+    /**
+     * Бары нескольких тикеров за произвольный диапазон одним потоком. Тикеры грузятся параллельно
+     * (не больше batch.concurrency), поэтому их бары в ответе перемежаются. Одинаковый подзапрос, который
+     * уже выполняется (в том числе для другого батча), не повторяется: новый подписчик получает общий поток.
+     * Из хранилища берутся только канонические шаги (см. BarStoreService.supports), остальные — через кэш.
+     * @throws IllegalArgumentException если список тикеров пуст или слишком длинный, multiplier вне
+     *         [1, batch.max-multiplier], либо диапазон неверен или длиннее лимита для минут, часов и дней
+     */
+    public Flux<StockBar> getBatchBars(List<String> rawTickers, LocalDate from, LocalDate to,
+                                       @Nullable String timespan, int multiplier, @Nullable Integer maxPoints) {
+        Set<String> tickers = new LinkedHashSet<>();
+        if (rawTickers != null) {
+            for (String t : rawTickers) {
+                String n = normalize(t);
+                if (!n.isEmpty()) tickers.add(n);
+            }
+        }
+        if (tickers.isEmpty()) throw new IllegalArgumentException("tickers are required");
+        if (tickers.size() > batchMaxTickers) {
+            throw new IllegalArgumentException("at most " + batchMaxTickers + " tickers per batch");
+        }
+        if (multiplier < 1 || multiplier > batchMaxMultiplier) {
+            throw new IllegalArgumentException("multiplier must be between 1 and " + batchMaxMultiplier);
+        }
+
+        Timespan span = timespan == null ? Timespan.DAY : Timespan.valueOf(timespan.trim().toUpperCase(Locale.ROOT));
+        if (span == Timespan.SECOND) throw new IllegalArgumentException("second bars are not supported");
+
+        ChartRange range = periodResolver.custom(from, to,
+                new TimePreset(String.valueOf(multiplier), span.name().toLowerCase(Locale.ROOT)));
+        int maxDays = switch (span) {
+            case MINUTE -> batchMaxMinuteDays;
+            case HOUR -> batchMaxHourDays;
+            case DAY -> batchMaxDayDays;
+            default -> Integer.MAX_VALUE;
+        };
+        if (range.to().toEpochDay() - range.from().toEpochDay() >= maxDays) {
+            throw new IllegalArgumentException(
+                    span.name().toLowerCase(Locale.ROOT) + " bars are limited to " + maxDays + " days");
+        }
+
+        return Flux.fromIterable(tickers)
+                .flatMap(ticker -> sharedBars(ticker, range, maxPoints)
+                        .filter(dto -> dto.getTimestamp() != null && dto.getClosePrice() != null)
+                        .map(dto -> StockBar.of(ticker, dto)), batchConcurrency);
+    }
+
+    private Flux<StockBarApi> sharedBars(String ticker, ChartRange range, @Nullable Integer maxPoints) {
+        BatchKey key = new BatchKey(ticker, range.preset(), range.from(), range.to(), maxPoints);
+
+        return Flux.defer(() -> inFlight.computeIfAbsent(key, k -> {
+            // запись убирается по завершении, но только своя — её мог уже заменить следующий запрос
+            AtomicReference<Flux<StockBarApi>> self = new AtomicReference<>();
+            self.set(rawBars(ticker, range, maxPoints)
+                    .doFinally(s -> inFlight.remove(k, self.get()))
+                    .replay()
+                    .refCount());
+            return self.get();
+        }));
+    }
+
+    private Flux<StockBarApi> rawBars(String ticker, ChartRange range, @Nullable Integer maxPoints) {
+        final TimePreset preset = range.preset();
+
+        // минутные/часовые/дневные бары — из локального хранилища с догрузкой пропусков
+        Flux<StockBarApi> source = barStoreService.supports(preset)
+                ? barStoreService.bars(ticker, preset, range.from(), range.to(), apiKey)
+                : aggregatesCache.get(rangeKey(ticker, range), apiKey)
+                        .flatMapIterable(resp -> resp.getResults() == null ? List.<StockBarApi>of() : resp.getResults());
+
+        Flux<StockBarApi> bars = source;
+        if (range.toTs() > range.nowTs()) {
+            // хвост, которого ещё нет у Polygon, достраиваем из живых баров
+            final AtomicLong lastTs = new AtomicLong(range.fromTs() - 1);
+            bars = source
+                    .doOnNext(dto -> lastTs.accumulateAndGet(dto.getTimestamp(), Math::max))
+                    .concatWith(Flux.defer(() -> Flux.fromIterable(intradayBars.after(ticker, preset, lastTs.get()))));
+        }
+        if (maxPoints != null) {
+            bars = Downsampler.ohlcBuckets(bars, range.fromTs(), Math.min(range.toTs(), range.nowTs()), maxPoints);
+        }
+        return bars;
+    }
+
+    /** Ключ кэша для нехранимых пресетов: весь диапазон одним запросом, цены уже скорректированы Polygon. */
+    private AggregatesCache.Key rangeKey(String ticker, ChartRange range) {
+        return new AggregatesCache.Key(ticker, range.period(), range.preset(), range.from(), range.to(), true);
+    }
+
+    private <T> Flux<T> notifying(Flux<T> bars, String userKey, String ticker, String period) {
+        return bars
                 .doOnComplete(() -> notifyReady(userKey, ticker, period)
                         .doOnError(e -> log.warn("notifyReady error: {}", e.toString()))
                         .subscribe())
@@ -94,79 +240,8 @@ public class HistoricalService {
     }
 
 
-    private Flux<StockBar> toBars(ApiResponse response, String ticker) {
-        if (response == null || response.getResults() == null || response.getResults().isEmpty()) {
-            return Flux.empty();
-        }
-
-        return Flux.fromIterable(response.getResults())
-                .map(dto -> mapToEntity(ticker, dto));
-    }
-
-    private Flux<StockBar> appendLatestIfAny(String ticker) {
-        StockPrice latest = latestPrices.get(ticker);
-        if (latest == null) return Flux.empty();
-        return Mono.just(convertToStockBar(latest)).flux();
-    }
-
-    private StockBar mapToEntity(String ticker, StockBarApi dto) {
-        long ts = dto.getTimestamp();
-        LocalDateTime dt = LocalDateTime.ofInstant(Instant.ofEpochMilli(ts), ZONE);
-
-        return StockBar.builder()
-                .id(normalize(ticker) + ":" + ts)
-                .ticker(normalize(ticker))
-                .timestamp(ts)
-                .date(dt)
-                .openPrice(dto.getOpenPrice())
-                .highPrice(dto.getHighPrice())
-                .lowPrice(dto.getLowPrice())
-                .closePrice(dto.getClosePrice())
-                .volume(dto.getVolume())
-                .numberOfTransactions(dto.getNumberOfTransactions())
-                .build();
-    }
-
-    private StockBar convertToStockBar(StockPrice p) {
-        long ts = p.getTimestamp();
-        LocalDateTime dt = LocalDateTime.ofInstant(Instant.ofEpochMilli(ts), ZONE);
-
-        return StockBar.builder()
-                .id(normalize(p.getTicker()) + ":" + ts)
-                .ticker(normalize(p.getTicker()))
-                .timestamp(ts)
-                .date(dt)
-                .openPrice(p.getPrice())
-                .highPrice(p.getPrice())
-                .lowPrice(p.getPrice())
-                .closePrice(p.getPrice())
-                .volume(0)
-                .numberOfTransactions(0)
-                .build();
-    }
-
     private String normalize(String s) {
         return s == null ? "" : s.trim().toUpperCase(Locale.ROOT);
     }
 
-    private TimePreset determinePreset(String period) {
-        return switch (period.toUpperCase()) {
-            case "ONE_WEEK" -> new TimePreset("5", "minute");
-            case "ONE_MONTH" -> new TimePreset("1", "day");
-            case "ONE_YEAR" -> new TimePreset("1", "week");
-            default -> new TimePreset("1", "day"); // fallback
-        };
-    }
-
-    private LocalDateTime determinePeriod(Period from) {
-        return switch (from) {
-            case TODAY       -> toNow;
-            case YESTERDAY   -> toNow.minusDays(1);
-            case ONE_WEEK    -> toNow.minusWeeks(1);
-            case ONE_MONTH   -> toNow.minusMonths(1);
-            case ONE_YEAR    -> toNow.minusYears(1);
-            case FIVE_YEARS  -> toNow.minusYears(5);
-        };
-    }
-
 }
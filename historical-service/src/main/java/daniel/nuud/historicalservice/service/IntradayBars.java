@@ -0,0 +1,73 @@
+package daniel.nuud.historicalservice.service;
+
+import daniel.nuud.historicalservice.dto.StockBarApi;
+import daniel.nuud.historicalservice.dto.StockPrice;
+import daniel.nuud.historicalservice.model.TimePreset;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Живые внутридневные бары из realtime-баров stocks-service: 1m и 5m OHLCV, плюс текущий день.
+ * Дневной бар начинается в полночь America/New_York, как дневные бары Polygon.
+ * Ряды ограничены по числу баров; при чтении дополняют ответ Polygon барами, которых в нём ещё нет.
+ */
+@Component
+public class IntradayBars {
+
+    private static final long MINUTE_MS = 60_000L;
+    private static final ZoneId MARKET = ZoneId.of("America/New_York");
+
+    private final int minuteBars;
+    private final int fiveMinuteBars;
+
+    private final Map<String, TickerSeries> byTicker = new ConcurrentHashMap<>();
+
+    public IntradayBars(@Value("${historical.intraday.minute-bars:1440}") int minuteBars,
+                        @Value("${historical.intraday.five-minute-bars:2016}") int fiveMinuteBars) {
+        this.minuteBars = minuteBars;
+        this.fiveMinuteBars = fiveMinuteBars;
+    }
+
+    public void add(String ticker, StockPrice p) {
+        byTicker.computeIfAbsent(ticker, t -> new TickerSeries(minuteBars, fiveMinuteBars))
+                .add(p.barStart(), p.barOpen(), p.barHigh(), p.barLow(), p.getPrice(), p.getVolume());
+    }
+
+    /** Собранные бары для пресета с началом после afterTs; пусто, если такой шаг не строим. */
+    public List<StockBarApi> after(String ticker, TimePreset preset, long afterTs) {
+        TickerSeries s = byTicker.get(ticker);
+        return s == null ? List.of() : s.after(preset, afterTs);
+    }
+
+    private static final class TickerSeries {
+        private final BarSeries minute;
+        private final BarSeries fiveMinute;
+        private final BarSeries day = BarSeries.days(MARKET, 7);
+
+        TickerSeries(int minuteBars, int fiveMinuteBars) {
+            this.minute = BarSeries.fixed(MINUTE_MS, minuteBars);
+            this.fiveMinute = BarSeries.fixed(5 * MINUTE_MS, fiveMinuteBars);
+        }
+
+        synchronized void add(long start, double open, double high, double low, double close, double volume) {
+            minute.add(start, open, high, low, close, volume);
+            fiveMinute.add(start, open, high, low, close, volume);
+            day.add(start, open, high, low, close, volume);
+        }
+
+        synchronized List<StockBarApi> after(TimePreset preset, long afterTs) {
+            BarSeries series = switch (preset.timespan() + "/" + preset.multiplier()) {
+                case "minute/1" -> minute;
+                case "minute/5" -> fiveMinute;
+                case "day/1" -> day;
+                default -> null;
+            };
+            return series == null ? List.of() : series.after(afterTs);
+        }
+    }
+}
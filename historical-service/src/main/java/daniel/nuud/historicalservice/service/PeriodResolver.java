@@ -0,0 +1,127 @@
+package daniel.nuud.historicalservice.service;
+
+import daniel.nuud.historicalservice.model.Period;
+import daniel.nuud.historicalservice.model.TimePreset;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Границы графика для периода, вычисляемые на каждый запрос от Clock. Дни — календарные дни биржи
+ * (America/New_York), как у дневных баров Polygon: вечерняя сессия до 20:00 ET остаётся в своём дне.
+ * TODAY и YESTERDAY привязаны к торговым дням: в выходные TODAY — последняя пятница,
+ * YESTERDAY — торговый день перед ней. Биржевые праздники не учитываются, в такие дни Polygon просто не отдаёт баров.
+ * Пресеты — общие неизменяемые экземпляры, так что одинаковые запросы дают равные ключи кэша.
+ */
+@Component
+@RequiredArgsConstructor
+public class PeriodResolver {
+
+    /** Диапазон графика: дни [from, to] и соответствующие им миллисекунды [fromTs, toTs). */
+    public record ChartRange(Period period, TimePreset preset, LocalDate from, LocalDate to,
+                             long fromTs, long toTs, long nowTs) {
+    }
+
+    static final ZoneId MARKET = ZoneId.of("America/New_York");
+    // расширенная сессия: премаркет с 04:00, вечерняя до 20:00 ET
+    private static final LocalTime SESSION_OPEN = LocalTime.of(4, 0);
+    private static final LocalTime SESSION_CLOSE = LocalTime.of(20, 0);
+
+    private static final Map<Period, TimePreset> PRESETS = new EnumMap<>(Map.of(
+            Period.TODAY, TimePreset.ONE_DAY,
+            Period.YESTERDAY, TimePreset.ONE_DAY,
+            Period.ONE_WEEK, TimePreset.FIVE_MINUTES,
+            Period.ONE_MONTH, TimePreset.ONE_DAY,
+            Period.ONE_YEAR, TimePreset.ONE_WEEK,
+            Period.FIVE_YEARS, TimePreset.ONE_DAY
+    ));
+
+    private final Clock clock;
+
+    public ChartRange resolve(Period period) {
+        long now = clock.millis();
+        LocalDate today = dayOf(now);
+
+        LocalDate from = switch (period) {
+            case TODAY       -> lastSession(today);
+            case YESTERDAY   -> lastSession(lastSession(today).minusDays(1));
+            case ONE_WEEK    -> today.minusWeeks(1);
+            case ONE_MONTH   -> today.minusMonths(1);
+            case ONE_YEAR    -> today.minusYears(1);
+            case FIVE_YEARS  -> today.minusYears(5);
+        };
+
+        return new ChartRange(period, PRESETS.get(period), from, today,
+                startOf(from), startOf(today.plusDays(1)), now);
+    }
+
+    /**
+     * Произвольный диапазон [from, to]; to позже сегодняшнего дня обрезается до сегодня.
+     * Период подбирается по длине диапазона и влияет только на TTL записи кэша.
+     * @throws IllegalArgumentException если границы не заданы или from позже to
+     */
+    public ChartRange custom(LocalDate from, LocalDate to, TimePreset preset) {
+        if (from == null || to == null) throw new IllegalArgumentException("from and to are required");
+        long now = clock.millis();
+        LocalDate today = dayOf(now);
+        if (to.isAfter(today)) to = today;
+        if (from.isAfter(to)) throw new IllegalArgumentException("from must not be after to");
+
+        long days = to.toEpochDay() - from.toEpochDay();
+        Period ttlClass = days < 1 ? Period.TODAY
+                : days <= 7 ? Period.ONE_WEEK
+                : days <= 31 ? Period.ONE_MONTH
+                : days <= 366 ? Period.ONE_YEAR
+                : Period.FIVE_YEARS;
+        return new ChartRange(ttlClass, preset, from, to, startOf(from), startOf(to.plusDays(1)), now);
+    }
+
+    public LocalDate today() {
+        return dayOf(clock.millis());
+    }
+
+    /**
+     * Первый ещё не закрытый день биржи: день закрыт, только когда закончилась его вечерняя сессия (20:00 ET).
+     * До этого его бары у Polygon ещё меняются, и сохранять их как окончательные нельзя.
+     */
+    public LocalDate firstOpenDay() {
+        ZonedDateTime now = ZonedDateTime.now(clock.withZone(MARKET));
+        LocalDate day = now.toLocalDate();
+        return now.toLocalTime().isBefore(SESSION_CLOSE) ? day : day.plusDays(1);
+    }
+
+    /** Идут ли сейчас торги (будни 04:00–20:00 ET, без праздников): вне сессии сегодняшние бары не меняются. */
+    public boolean inSession() {
+        ZonedDateTime now = ZonedDateTime.now(clock.withZone(MARKET));
+        DayOfWeek dow = now.getDayOfWeek();
+        if (dow == DayOfWeek.SATURDAY || dow == DayOfWeek.SUNDAY) return false;
+        LocalTime t = now.toLocalTime();
+        return !t.isBefore(SESSION_OPEN) && t.isBefore(SESSION_CLOSE);
+    }
+
+    /** Последний торговый день не позже date (без учёта праздников). */
+    private static LocalDate lastSession(LocalDate date) {
+        DayOfWeek dow = date.getDayOfWeek();
+        if (dow == DayOfWeek.SATURDAY) return date.minusDays(1);
+        if (dow == DayOfWeek.SUNDAY) return date.minusDays(2);
+        return date;
+    }
+
+    /** Начало дня биржи в миллисекундах. */
+    static long startOf(LocalDate day) {
+        return day.atStartOfDay(MARKET).toInstant().toEpochMilli();
+    }
+
+    private static LocalDate dayOf(long epochMs) {
+        return Instant.ofEpochMilli(epochMs).atZone(MARKET).toLocalDate();
+    }
+}
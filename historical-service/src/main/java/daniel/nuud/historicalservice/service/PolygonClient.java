@@ -2,49 +2,102 @@ package daniel.nuud.historicalservice.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import daniel.nuud.historicalservice.dto.ApiResponse;
+import daniel.nuud.historicalservice.dto.SplitApi;
+import daniel.nuud.historicalservice.dto.SplitsResponse;
+import daniel.nuud.historicalservice.dto.StockBarApi;
 import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
 import io.github.resilience4j.retry.annotation.Retry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
 
-import java.io.IOException;
 import java.time.LocalDate;
+import java.util.List;
 
 @Component
 @RequiredArgsConstructor
 @Slf4j
 public class PolygonClient {
 
+    /** Максимум баров, который Polygon отдаёт за один запрос без пагинации. */
+    public static final int PAGE_LIMIT = 50_000;
+
     private final WebClient polygonWebClient;
     private final ObjectMapper mapper;
 
 //    @CircuitBreaker(name = "polygonHistCB", fallbackMethod = "fallbackEmpty")
 //    @Retry(name = "readSafe")
-    public Mono<ApiResponse> getAggregates(String ticker, String multiplier, String timespan, LocalDate from, LocalDate to, String apiKey) {
+    public Mono<ApiResponse> getAggregates(String ticker, String multiplier, String timespan, LocalDate from, LocalDate to,
+                                           boolean adjusted, String apiKey) {
+        return streamAggregates(ticker, multiplier, timespan, from, to, adjusted, apiKey)
+                .collectList()
+                .map(results -> {
+                    ApiResponse resp = new ApiResponse();
+                    resp.setTicker(ticker.toUpperCase());
+                    resp.setResultsCount(results.size());
+                    resp.setAdjusted(adjusted);
+                    resp.setResults(results);
+                    return resp;
+                });
+    }
+
+    /**
+     * Бары из results по мере прихода тела ответа: куски DataBuffer скармливаются неблокирующему
+     * парсеру Jackson и сразу освобождаются, так что целиком тело в памяти не собирается.
+     * adjusted=false — цены как торговались, без пересчёта на сплиты.
+     */
+    public Flux<StockBarApi> streamAggregates(String ticker, String multiplier, String timespan,
+                                              LocalDate from, LocalDate to, boolean adjusted, String apiKey) {
 
         String path = "/v2/aggs/ticker/%s/range/%s/%s/%s/%s".formatted(
                 ticker.toUpperCase(), multiplier, timespan, from, to
         );
 
+        return Flux.defer(() -> {
+                    AggregatesTokenizer tokenizer = new AggregatesTokenizer(mapper);
+                    return polygonWebClient.get()
+                            .uri(uri -> uri
+                                    .path(path)
+                                    .queryParam("adjusted", adjusted)
+                                    .queryParam("sort", "asc")
+                                    .queryParam("limit", PAGE_LIMIT)
+                                    .queryParam("apiKey", apiKey)
+                                    .build())
+                            .retrieve()
+                            .bodyToFlux(DataBuffer.class)
+                            .concatMapIterable(buf -> {
+                                try {
+                                    byte[] bytes = new byte[buf.readableByteCount()];
+                                    buf.read(bytes);
+                                    return tokenizer.feed(bytes);
+                                } finally {
+                                    DataBufferUtils.release(buf);
+                                }
+                            })
+                            .concatWith(Flux.defer(() -> Flux.fromIterable(tokenizer.end())));
+                })
+                .doOnError(e -> log.warn("Polygon historical error for {}: {}", ticker, e.toString()));
+    }
+
+    /** Все сплиты тикера, включая объявленные на будущие даты. */
+    public Mono<List<SplitApi>> getSplits(String ticker, String apiKey) {
         return polygonWebClient.get()
                 .uri(uri -> uri
-                        .path(path)
-                        .queryParam("adjusted", "true")
-                        .queryParam("sort", "asc")
+                        .path("/v3/reference/splits")
+                        .queryParam("ticker", ticker.toUpperCase())
+                        .queryParam("limit", 1000)
                         .queryParam("apiKey", apiKey)
                         .build())
                 .retrieve()
-                .bodyToMono(byte[].class)
-                .flatMap(bytes ->
-                        Mono.fromCallable(() -> mapper.readValue(bytes, ApiResponse.class))
-                                .subscribeOn(Schedulers.boundedElastic())
-                )
-                .doOnError(e -> log.warn("Polygon historical error for {}: {}", ticker, e.toString()));
+                .bodyToMono(SplitsResponse.class)
+                .map(resp -> resp.getResults() == null ? List.<SplitApi>of() : resp.getResults())
+                .doOnError(e -> log.warn("Polygon splits error for {}: {}", ticker, e.toString()));
     }
 
     private Mono<ApiResponse> fallbackEmpty(String ticker, String multiplier, String timespan,
@@ -0,0 +1,84 @@
+package daniel.nuud.historicalservice.service;
+
+import daniel.nuud.historicalservice.model.Period;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Самые запрашиваемые графики (тикер + период) по алгоритму Space-Saving: не больше capacity счётчиков,
+ * новая серия при заполнении вытесняет наименее популярную и наследует её счёт, так что
+ * действительно частые серии в топе не теряются. Счёт периодически делится пополам (decay),
+ * чтобы топ отражал текущий интерес, а не накопленный за всё время.
+ */
+@Component
+public class PopularSeries {
+
+    public record Series(String ticker, Period period) {
+        String encode() {
+            return ticker + ":" + period.name();
+        }
+
+        static Series decode(String s) {
+            int i = s.lastIndexOf(':');
+            return new Series(s.substring(0, i), Period.valueOf(s.substring(i + 1)));
+        }
+    }
+
+    private final int capacity;
+    private final Map<Series, Long> counts = new HashMap<>();
+
+    public PopularSeries(@Value("${historical.warmup.tracked:256}") int capacity) {
+        this.capacity = capacity;
+    }
+
+    public void record(String ticker, Period period) {
+        add(new Series(ticker, period), 1);
+    }
+
+    /** Поднять серию из сохранённого списка с весом weight. */
+    public void seed(Series series, long weight) {
+        add(series, weight);
+    }
+
+    public synchronized List<Series> top(int k) {
+        List<Map.Entry<Series, Long>> entries = new ArrayList<>(counts.entrySet());
+        entries.sort(Map.Entry.<Series, Long>comparingByValue().reversed());
+
+        List<Series> out = new ArrayList<>(Math.min(k, entries.size()));
+        for (int i = 0; i < entries.size() && i < k; i++) out.add(entries.get(i).getKey());
+        return out;
+    }
+
+    public synchronized void decay() {
+        counts.replaceAll((s, c) -> c >> 1);
+        counts.values().removeIf(c -> c == 0);
+    }
+
+    private synchronized void add(Series series, long weight) {
+        Long c = counts.get(series);
+        if (c != null) {
+            counts.put(series, c + weight);
+            return;
+        }
+        if (counts.size() < capacity) {
+            counts.put(series, weight);
+            return;
+        }
+
+        Series min = null;
+        long minCount = Long.MAX_VALUE;
+        for (Map.Entry<Series, Long> e : counts.entrySet()) {
+            if (e.getValue() < minCount) {
+                min = e.getKey();
+                minCount = e.getValue();
+            }
+        }
+        counts.remove(min);
+        counts.put(series, minCount + weight);
+    }
+}
@@ -0,0 +1,142 @@
+package daniel.nuud.historicalservice.service;
+
+import daniel.nuud.historicalservice.config.CacheConfig.AggregatesCacheProps;
+import daniel.nuud.historicalservice.service.PopularSeries.Series;
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterRegistry;
+import io.github.resilience4j.ratelimiter.RequestNotPermitted;
+import io.github.resilience4j.reactor.ratelimiter.operator.RateLimiterOperator;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Фоновое обновление популярных графиков, чтобы их пользователи не ждали Polygon.
+ * Раз в interval-ms топ PopularSeries прогревается не более чем max-concurrency запросами сразу
+ * и не чаще лимита polygonWarmRL: записи кэша, которым осталась доля refresh-ahead их TTL, перезапрашиваются
+ * заранее, пропущенные дни догружаются. Вне торговой сессии записи с сегодняшним днём не обновляются.
+ * Топ сохраняется в Redis и при старте прогревается до первых запросов.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SeriesWarmer {
+
+    private static final String HOT_LIST_KEY = "hist:popular";
+    private static final Duration HOT_LIST_TTL = Duration.ofDays(7);
+
+    private final PopularSeries popularSeries;
+    private final HistoricalService historicalService;
+    private final ReactiveRedisTemplate<String, String> redis;
+    private final AggregatesCacheProps cacheProps;
+    private final RateLimiterRegistry rateLimiters;
+
+    @Value("${historical.warmup.enabled:true}")
+    private boolean enabled;
+    @Value("${historical.warmup.top-k:20}")
+    private int topK;
+    @Value("${historical.warmup.max-concurrency:2}")
+    private int maxConcurrency;
+    // доля TTL записи, при которой она перезапрашивается заранее
+    @Value("${historical.warmup.refresh-ahead:0.5}")
+    private double refreshAhead;
+
+    private RateLimiter rateLimiter;
+
+    @PostConstruct
+    void init() {
+        if (refreshAhead <= 0 || refreshAhead >= 1) {
+            throw new IllegalStateException("historical.warmup.refresh-ahead must be in (0, 1): " + refreshAhead);
+        }
+        rateLimiter = rateLimiters.rateLimiter("polygonWarmRL");
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmOnStartup() {
+        if (!enabled || !cacheProps.isRedisEnabled()) return;
+
+        readHotList()
+                .doOnNext(list -> {
+                    log.info("Warming {} popular series from saved hot list", list.size());
+                    for (int i = 0; i < list.size(); i++) popularSeries.seed(list.get(i), list.size() - i);
+                })
+                .flatMapMany(Flux::fromIterable)
+                .flatMap(this::warm, maxConcurrency)
+                .subscribe();
+    }
+
+    @Scheduled(fixedDelayString = "${historical.warmup.interval-ms:30000}",
+            initialDelayString = "${historical.warmup.interval-ms:30000}")
+    public Mono<Void> refreshPopular() {
+        if (!enabled) return Mono.empty();
+        List<Series> top = popularSeries.top(topK);
+        if (top.isEmpty()) return Mono.empty();
+
+        return Flux.fromIterable(top)
+                .flatMap(this::warm, maxConcurrency)
+                .then(saveHotList(top));
+    }
+
+    @Scheduled(fixedDelayString = "${historical.warmup.decay-ms:600000}")
+    public void decay() {
+        popularSeries.decay();
+    }
+
+    private Mono<Void> warm(Series s) {
+        return Mono.defer(() -> historicalService.warm(s.ticker(), s.period(), refreshAhead))
+                .transformDeferred(RateLimiterOperator.of(rateLimiter))
+                .doOnSuccess(v -> log.debug("Warmed {}", s))
+                .onErrorResume(RequestNotPermitted.class, e -> {
+                    log.debug("Warm-up of {} skipped: rate limit", s);
+                    return Mono.empty();
+                })
+                .onErrorResume(e -> {
+                    log.warn("Warm-up failed for {}: {}", s, e.toString());
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<List<Series>> readHotList() {
+        return redis.opsForValue().get(HOT_LIST_KEY)
+                .map(value -> {
+                    List<Series> out = new ArrayList<>();
+                    for (String line : value.split("\n")) {
+                        try {
+                            if (!line.isBlank()) out.add(Series.decode(line.trim()));
+                        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                            log.debug("Skipping bad hot list entry {}", line);
+                        }
+                    }
+                    return out;
+                })
+                .onErrorResume(e -> {
+                    log.warn("Hot list read failed: {}", e.toString());
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<Void> saveHotList(List<Series> top) {
+        if (!cacheProps.isRedisEnabled()) return Mono.empty();
+        StringBuilder sb = new StringBuilder();
+        for (Series s : top) sb.append(s.encode()).append('\n');
+
+        return redis.opsForValue().set(HOT_LIST_KEY, sb.toString(), HOT_LIST_TTL)
+                .then()
+                .onErrorResume(e -> {
+                    log.debug("Hot list write failed: {}", e.toString());
+                    return Mono.empty();
+                });
+    }
+}
@@ -0,0 +1,105 @@
+package daniel.nuud.historicalservice.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCacheLoader;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import daniel.nuud.historicalservice.dto.StockBarApi;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Таблицы сплитов по тикерам. Бары в хранилище лежат нескорректированными, а корректировка
+ * применяется при чтении, поэтому новый сплит требует перечитать только эту таблицу, а не годы баров.
+ * Таблица перезапрашивается из Polygon раз в historical.splits.refresh; при ошибке обновления
+ * остаётся прежняя. Если таблицу не удалось получить ни разу, график не падает: бары отдаются
+ * без поправки, а неудача кэшируется на historical.splits.retry, чтобы не дёргать Polygon на каждый запрос.
+ */
+@Slf4j
+@Component
+public class SplitAdjustments {
+
+    private final PolygonClient polygonClient;
+    private final String apiKey;
+    private final AsyncLoadingCache<String, SplitFactors> tables;
+
+    public SplitAdjustments(PolygonClient polygonClient,
+                            @Value("${polygon.api.key}") String apiKey,
+                            @Value("${historical.splits.refresh:12h}") Duration refresh,
+                            @Value("${historical.splits.retry:1m}") Duration retry,
+                            @Value("${historical.splits.max-tickers:10000}") long maxTickers) {
+        this.polygonClient = polygonClient;
+        this.apiKey = apiKey;
+        this.tables = Caffeine.newBuilder()
+                .maximumSize(maxTickers)
+                .refreshAfterWrite(refresh)
+                .expireAfter(failuresExpireAfter(retry))
+                .buildAsync(new AsyncCacheLoader<String, SplitFactors>() {
+                    @Override
+                    public CompletableFuture<SplitFactors> asyncLoad(String ticker, Executor executor) {
+                        return load(ticker)
+                                .onErrorResume(e -> {
+                                    log.warn("Splits for {} unavailable, serving unadjusted bars for {}: {}",
+                                            ticker, retry, e.toString());
+                                    return Mono.just(SplitFactors.UNAVAILABLE);
+                                })
+                                .toFuture();
+                    }
+
+                    @Override
+                    public CompletableFuture<SplitFactors> asyncReload(String ticker, SplitFactors old, Executor executor) {
+                        // ошибка обновления оставляет в кэше прежнюю таблицу
+                        return load(ticker).toFuture();
+                    }
+                });
+    }
+
+    /** Бары тикера в ценах после всех уже исполненных сплитов (как adjusted=true у Polygon). */
+    public Flux<StockBarApi> adjust(String ticker, Flux<StockBarApi> unadjusted) {
+        return Mono.fromFuture(() -> tables.get(ticker), true)
+                .onErrorResume(e -> {
+                    log.warn("Split table lookup for {} failed, serving unadjusted bars: {}", ticker, e.toString());
+                    return Mono.just(SplitFactors.UNAVAILABLE);
+                })
+                .flatMapMany(factors -> {
+                    if (factors.size() == 0) return unadjusted;
+                    long now = System.currentTimeMillis();
+                    return unadjusted.map(bar -> factors.apply(bar, now));
+                });
+    }
+
+    /** Удачные таблицы живут до вытеснения (их обновляет refreshAfterWrite), неудача — только retry. */
+    private static Expiry<String, SplitFactors> failuresExpireAfter(Duration retry) {
+        final long retryNanos = retry.toNanos();
+        return new Expiry<>() {
+            @Override
+            public long expireAfterCreate(String ticker, SplitFactors factors, long currentTime) {
+                return factors == SplitFactors.UNAVAILABLE ? retryNanos : Long.MAX_VALUE;
+            }
+
+            @Override
+            public long expireAfterUpdate(String ticker, SplitFactors factors, long currentTime, long currentDuration) {
+                return expireAfterCreate(ticker, factors, currentTime);
+            }
+
+            @Override
+            public long expireAfterRead(String ticker, SplitFactors factors, long currentTime, long currentDuration) {
+                return currentDuration;
+            }
+        };
+    }
+
+    private Mono<SplitFactors> load(String ticker) {
+        return polygonClient.getSplits(ticker, apiKey)
+                .map(SplitFactors::of)
+                .defaultIfEmpty(SplitFactors.NONE)
+                .doOnNext(f -> log.debug("Loaded {} splits for {}", f.size(), ticker));
+    }
+}
@@ -0,0 +1,90 @@
+package daniel.nuud.historicalservice.service;
+
+import daniel.nuud.historicalservice.dto.SplitApi;
+import daniel.nuud.historicalservice.dto.StockBarApi;
+
+import java.time.ZoneId;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Сплиты одного тикера для пересчёта нескорректированных баров при чтении.
+ * exTs — начала дней исполнения (America/New_York) по возрастанию, suffix[i] — произведение
+ * split_from/split_to всех сплитов начиная с i-го (suffix[n] = 1). Множитель цены бара — произведение сплитов
+ * с ts < exTs <= now, то есть suffix[i] / suffix[j]; объём делится на тот же множитель.
+ * Объявленные, но ещё не исполненные сплиты учитываются автоматически, когда наступает их день.
+ * Граница — полночь по Нью-Йорку, а не UTC: вечерняя сессия накануне (до 20:00 ET, это уже следующие сутки
+ * по UTC) идёт по старым ценам, а дневной бар дня исполнения (t = 00:00 ET) и премаркет с 04:00 — по новым.
+ */
+final class SplitFactors {
+
+    private static final ZoneId MARKET = ZoneId.of("America/New_York");
+
+    static final SplitFactors NONE = new SplitFactors(new long[0], new double[]{1.0});
+    // таблицу не удалось загрузить: бары отдаются без поправки до повторной попытки
+    static final SplitFactors UNAVAILABLE = new SplitFactors(new long[0], new double[]{1.0});
+
+    private final long[] exTs;
+    private final double[] suffix;
+
+    private SplitFactors(long[] exTs, double[] suffix) {
+        this.exTs = exTs;
+        this.suffix = suffix;
+    }
+
+    static SplitFactors of(List<SplitApi> splits) {
+        List<SplitApi> valid = splits.stream()
+                .filter(s -> s.getExecutionDate() != null
+                        && s.getSplitFrom() != null && s.getSplitFrom() > 0
+                        && s.getSplitTo() != null && s.getSplitTo() > 0)
+                .sorted(Comparator.comparing(SplitApi::getExecutionDate))
+                .toList();
+        if (valid.isEmpty()) return NONE;
+
+        int n = valid.size();
+        long[] exTs = new long[n];
+        double[] suffix = new double[n + 1];
+        suffix[n] = 1.0;
+        for (int i = n - 1; i >= 0; i--) {
+            SplitApi s = valid.get(i);
+            exTs[i] = s.getExecutionDate().atStartOfDay(MARKET).toInstant().toEpochMilli();
+            suffix[i] = suffix[i + 1] * (s.getSplitFrom() / s.getSplitTo());
+        }
+        return new SplitFactors(exTs, suffix);
+    }
+
+    int size() {
+        return exTs.length;
+    }
+
+    /** Множитель цены бара с началом ts на момент nowTs. */
+    double factorAt(long ts, long nowTs) {
+        return suffix[upperBound(exTs, ts)] / suffix[upperBound(exTs, nowTs)];
+    }
+
+    /** Скорректировать бар на месте; бары после последнего исполненного сплита не трогаются. */
+    StockBarApi apply(StockBarApi bar, long nowTs) {
+        if (exTs.length == 0 || bar.getTimestamp() == null) return bar;
+        double f = factorAt(bar.getTimestamp(), nowTs);
+        if (f == 1.0) return bar;
+
+        if (bar.getOpenPrice() != null) bar.setOpenPrice(bar.getOpenPrice() * f);
+        if (bar.getHighPrice() != null) bar.setHighPrice(bar.getHighPrice() * f);
+        if (bar.getLowPrice() != null) bar.setLowPrice(bar.getLowPrice() * f);
+        if (bar.getClosePrice() != null) bar.setClosePrice(bar.getClosePrice() * f);
+        if (bar.getVolumeWeight() != null) bar.setVolumeWeight(bar.getVolumeWeight() * f);
+        if (bar.getVolume() != null) bar.setVolume(Math.round(bar.getVolume() / f));
+        return bar;
+    }
+
+    /** Первый индекс с a[i] > key. */
+    private static int upperBound(long[] a, long key) {
+        int lo = 0, hi = a.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (a[mid] <= key) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,26 @@
+-- бары Polygon; первичный ключ заодно служит индексом для выборок по диапазону ts
+create table if not exists public.bars (
+    ticker        text             not null,
+    multiplier    integer          not null,
+    timespan      text             not null,
+    ts            bigint           not null,
+    open          double precision not null,
+    high          double precision not null,
+    low           double precision not null,
+    close         double precision not null,
+    volume        bigint           not null default 0,
+    transactions  integer          not null default 0,
+
+    constraint pk_bars primary key (ticker, multiplier, timespan, ts)
+);
+
+-- закрытые дни (UTC), для которых бары уже полностью загружены из Polygon
+create table if not exists public.bar_days (
+    ticker        text        not null,
+    multiplier    integer     not null,
+    timespan      text        not null,
+    day           date        not null,
+    loaded_at     timestamptz not null default now(),
+
+    constraint pk_bar_days primary key (ticker, multiplier, timespan, day)
+);
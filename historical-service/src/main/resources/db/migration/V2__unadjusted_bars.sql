@@ -0,0 +1,4 @@
+-- бары теперь хранятся без поправки на сплиты (adjusted=false), поправка применяется при чтении;
+-- ранее загруженные скорректированные бары сбрасываем, чтобы они догрузились заново
+delete from public.bar_days;
+delete from public.bars;
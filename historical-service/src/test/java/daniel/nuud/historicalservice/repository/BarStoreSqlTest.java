@@ -0,0 +1,48 @@
+package daniel.nuud.historicalservice.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BarStoreSqlTest {
+
+    private static final Pattern BAR_ROW = Pattern.compile(
+            "\\(\\$1, \\$2, \\$3, \\$(\\d+), \\$(\\d+), \\$(\\d+), \\$(\\d+), \\$(\\d+), \\$(\\d+), \\$(\\d+)\\)");
+
+    @Test
+    void upsertRowsShareTickerParamsAndNumberTheRestSequentially() {
+        String sql = BarStore.upsertSql(500);
+
+        Matcher m = BAR_ROW.matcher(sql);
+        int rows = 0;
+        int expected = 4;
+        while (m.find()) {
+            for (int g = 1; g <= 7; g++) {
+                assertEquals(expected++, Integer.parseInt(m.group(g)));
+            }
+            rows++;
+        }
+        assertEquals(500, rows);
+        // 3 + 7 * 500 — заметно меньше лимита биндов Postgres (65535)
+        assertEquals(3503, expected - 1);
+        assertTrue(sql.contains("on conflict (ticker, multiplier, timespan, ts) do update set"), sql);
+    }
+
+    @Test
+    void singleBarUpsert() {
+        String sql = BarStore.upsertSql(1);
+
+        assertTrue(sql.contains("values\n($1, $2, $3, $4, $5, $6, $7, $8, $9, $10) on conflict"), sql);
+    }
+
+    @Test
+    void markLoadedAddsOneParamPerDay() {
+        assertEquals("insert into bar_days (ticker, multiplier, timespan, day) values "
+                        + "($1, $2, $3, $4), ($1, $2, $3, $5), ($1, $2, $3, $6) on conflict do nothing",
+                BarStore.markLoadedSql(3));
+    }
+}
@@ -0,0 +1,94 @@
+package daniel.nuud.historicalservice.service;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import daniel.nuud.historicalservice.dto.StockBarApi;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AggregatesTokenizerTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private static final String RESPONSE = """
+            {"ticker":"AAPL","queryCount":2,"resultsCount":2,"adjusted":false,"results":[\
+            {"v":6.6427835e+07,"vw":237.0292,"o":237.21,"c":238.47,"h":238.85,"l":234.36,"t":1756872000000,"n":898535},\
+            {"v":4.7549429e+07,"vw":238.5031,"o":238.45,"c":239.78,"h":239.8999,"l":236.74,"t":1756958400000,"n":541770,"otc":false}\
+            ],"status":"OK","request_id":"abc","next_url":"https://api.polygon.io/v2/aggs/cursor"}""";
+
+    private static List<StockBarApi> feedInChunks(String json, int chunk) {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        AggregatesTokenizer tokenizer = new AggregatesTokenizer(MAPPER);
+        List<StockBarApi> out = new ArrayList<>();
+        for (int i = 0; i < bytes.length; i += chunk) {
+            out.addAll(tokenizer.feed(Arrays.copyOfRange(bytes, i, Math.min(bytes.length, i + chunk))));
+        }
+        out.addAll(tokenizer.end());
+        return out;
+    }
+
+    @Test
+    void parsesResultsFedAtOnce() {
+        List<StockBarApi> bars = feedInChunks(RESPONSE, Integer.MAX_VALUE);
+
+        assertEquals(2, bars.size());
+        StockBarApi first = bars.get(0);
+        assertEquals(1756872000000L, first.getTimestamp());
+        assertEquals(237.21, first.getOpenPrice());
+        assertEquals(238.85, first.getHighPrice());
+        assertEquals(234.36, first.getLowPrice());
+        assertEquals(238.47, first.getClosePrice());
+        assertEquals(66427835L, first.getVolume());
+        assertEquals(237.0292, first.getVolumeWeight());
+        assertEquals(898535, first.getNumberOfTransactions());
+        assertEquals(1756958400000L, bars.get(1).getTimestamp());
+    }
+
+    @Test
+    void chunkBoundariesDoNotChangeTheResult() {
+        List<StockBarApi> whole = feedInChunks(RESPONSE, Integer.MAX_VALUE);
+
+        for (int chunk : new int[]{1, 3, 7, 64}) {
+            assertEquals(whole, feedInChunks(RESPONSE, chunk), "chunk " + chunk);
+        }
+    }
+
+    @Test
+    void emitsBarsAsSoonAsTheyAreComplete() {
+        byte[] bytes = RESPONSE.getBytes(StandardCharsets.UTF_8);
+        int secondBar = RESPONSE.indexOf("{\"v\":4.75");
+        AggregatesTokenizer tokenizer = new AggregatesTokenizer(MAPPER);
+
+        assertEquals(1, tokenizer.feed(Arrays.copyOfRange(bytes, 0, secondBar + 10)).size());
+        assertEquals(1, tokenizer.feed(Arrays.copyOfRange(bytes, secondBar + 10, bytes.length)).size());
+        assertTrue(tokenizer.end().isEmpty());
+    }
+
+    @Test
+    void ignoresNestedResultsAndKeepsNestedValuesInsideABar() {
+        String json = """
+                {"meta":{"results":[{"t":1,"c":1.0}]},\
+                "results":[{"t":2,"c":2.0,"extra":{"results":[{"t":3}]},"tags":[[1],[2]]}],\
+                "other":[{"t":4,"c":4.0}]}""";
+
+        List<StockBarApi> bars = feedInChunks(json, 5);
+
+        assertEquals(1, bars.size());
+        assertEquals(2L, bars.get(0).getTimestamp());
+        assertEquals(2.0, bars.get(0).getClosePrice());
+    }
+
+    @Test
+    void responseWithoutResultsYieldsNothing() {
+        assertTrue(feedInChunks("{\"ticker\":\"AAPL\",\"resultsCount\":0,\"status\":\"OK\"}", 4).isEmpty());
+        assertTrue(feedInChunks("{\"results\":[]}", 2).isEmpty());
+    }
+}
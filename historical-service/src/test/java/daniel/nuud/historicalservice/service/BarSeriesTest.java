@@ -0,0 +1,107 @@
+package daniel.nuud.historicalservice.service;
+
+import daniel.nuud.historicalservice.dto.StockBarApi;
+import org.junit.jupiter.api.Test;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BarSeriesTest {
+
+    private static final long MIN = 60_000L;
+    private static final ZoneId NY = ZoneId.of("America/New_York");
+
+    private static long et(int year, int month, int day, int hour, int minute) {
+        return ZonedDateTime.of(year, month, day, hour, minute, 0, 0, NY).toInstant().toEpochMilli();
+    }
+
+    @Test
+    void minuteBarIsKeyedByItsStart() {
+        BarSeries minute = BarSeries.fixed(MIN, 10);
+        long s = 100 * MIN;
+
+        minute.add(s, 10, 12, 9, 11, 100);
+
+        List<StockBarApi> bars = minute.after(0);
+        assertEquals(1, bars.size());
+        StockBarApi b = bars.get(0);
+        assertEquals(s, b.getTimestamp());
+        assertEquals(10.0, b.getOpenPrice());
+        assertEquals(12.0, b.getHighPrice());
+        assertEquals(9.0, b.getLowPrice());
+        assertEquals(11.0, b.getClosePrice());
+        assertEquals(100L, b.getVolume());
+    }
+
+    @Test
+    void foldsMinuteBarsIntoFiveMinuteBucketWithTheirHighsAndLows() {
+        BarSeries five = BarSeries.fixed(5 * MIN, 10);
+        long s = 100 * MIN;   // кратно 5 минутам
+
+        five.add(s, 10, 11, 9.5, 10.5, 100);
+        five.add(s + MIN, 10.5, 14, 10, 12, 100);
+        five.add(s + 4 * MIN, 12, 12.5, 8, 9, 100);
+        five.add(s + 5 * MIN, 9, 9.5, 8.5, 9.2, 50);
+
+        List<StockBarApi> bars = five.after(0);
+        assertEquals(2, bars.size());
+        StockBarApi first = bars.get(0);
+        assertEquals(s, first.getTimestamp());
+        assertEquals(10.0, first.getOpenPrice());
+        assertEquals(14.0, first.getHighPrice());
+        assertEquals(8.0, first.getLowPrice());
+        assertEquals(9.0, first.getClosePrice());
+        assertEquals(300L, first.getVolume());
+        assertEquals(3, first.getNumberOfTransactions());
+        assertEquals(s + 5 * MIN, bars.get(1).getTimestamp());
+    }
+
+    @Test
+    void lateBarUpdatesItsBucketButNotClose() {
+        BarSeries minute = BarSeries.fixed(MIN, 10);
+        minute.add(MIN, 10, 10, 10, 10, 1);
+        minute.add(2 * MIN, 11, 11, 11, 11, 1);
+
+        minute.add(MIN, 10, 15, 5, 12, 1);
+
+        StockBarApi first = minute.after(0).get(0);
+        assertEquals(15.0, first.getHighPrice());
+        assertEquals(5.0, first.getLowPrice());
+        assertEquals(10.0, first.getClosePrice());
+        assertEquals(2L, first.getVolume());
+    }
+
+    @Test
+    void evictsOldestWhenFull() {
+        BarSeries minute = BarSeries.fixed(MIN, 3);
+        for (int m = 1; m <= 5; m++) minute.add(m * MIN, m, m, m, m, 1);
+
+        List<StockBarApi> bars = minute.after(0);
+        assertEquals(List.of(3 * MIN, 4 * MIN, 5 * MIN), bars.stream().map(StockBarApi::getTimestamp).toList());
+        assertEquals(List.of(5 * MIN), minute.after(4 * MIN).stream().map(StockBarApi::getTimestamp).toList());
+    }
+
+    @Test
+    void dayBucketStartsAtMidnightNewYorkNotUtc() {
+        BarSeries day = BarSeries.days(NY, 7);
+
+        // зимой 19:30 ET — это уже следующие сутки по UTC, но тот же торговый день
+        day.add(et(2024, 1, 16, 9, 30), 100, 101, 99, 100.5, 10);
+        day.add(et(2024, 1, 16, 19, 30), 100.5, 103, 100, 102, 5);
+        // летом (EDT) полночь сдвинута на час
+        day.add(et(2024, 7, 16, 4, 0), 200, 201, 199, 200, 1);
+
+        List<StockBarApi> bars = day.after(0);
+        assertEquals(2, bars.size());
+        assertEquals(et(2024, 1, 16, 0, 0), bars.get(0).getTimestamp());
+        assertEquals(103.0, bars.get(0).getHighPrice());
+        assertEquals(102.0, bars.get(0).getClosePrice());
+        assertEquals(15L, bars.get(0).getVolume());
+        assertEquals(et(2024, 7, 16, 0, 0), bars.get(1).getTimestamp());
+        assertTrue(bars.get(1).getTimestamp() % (24 * 60 * MIN) == 4 * 60 * MIN);
+    }
+}
@@ -0,0 +1,100 @@
+package daniel.nuud.historicalservice.service;
+
+import daniel.nuud.historicalservice.dto.StockBarApi;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class DownsamplerTest {
+
+    private static StockBarApi bar(long ts, Double o, Double h, Double l, double c, long v, int n) {
+        StockBarApi b = new StockBarApi();
+        b.setTimestamp(ts);
+        b.setOpenPrice(o);
+        b.setHighPrice(h);
+        b.setLowPrice(l);
+        b.setClosePrice(c);
+        b.setVolume(v);
+        b.setNumberOfTransactions(n);
+        return b;
+    }
+
+    private static List<StockBarApi> run(List<StockBarApi> bars, long from, long to, int maxPoints) {
+        return Downsampler.ohlcBuckets(Flux.fromIterable(bars), from, to, maxPoints).collectList().block();
+    }
+
+    @Test
+    void mergesBucketPreservingOhlc() {
+        List<StockBarApi> out = run(List.of(
+                bar(0, 10.0, 11.0, 9.0, 10.5, 100, 1),
+                bar(10, 10.5, 15.0, 10.0, 14.0, 200, 2),
+                bar(20, 14.0, 14.5, 7.0, 8.0, 300, 3),
+                bar(60, 8.0, 9.0, 7.5, 8.5, 50, 4),
+                bar(70, 8.5, 8.8, 8.1, 8.2, 60, 5)
+        ), 0, 100, 2);
+
+        assertEquals(2, out.size());
+        StockBarApi first = out.get(0);
+        assertEquals(0L, first.getTimestamp());
+        assertEquals(10.0, first.getOpenPrice());
+        assertEquals(15.0, first.getHighPrice());
+        assertEquals(7.0, first.getLowPrice());
+        assertEquals(8.0, first.getClosePrice());
+        assertEquals(600L, first.getVolume());
+        assertEquals(6, first.getNumberOfTransactions());
+
+        StockBarApi second = out.get(1);
+        assertEquals(60L, second.getTimestamp());
+        assertEquals(8.0, second.getOpenPrice());
+        assertEquals(9.0, second.getHighPrice());
+        assertEquals(7.5, second.getLowPrice());
+        assertEquals(8.2, second.getClosePrice());
+        assertEquals(110L, second.getVolume());
+    }
+
+    @Test
+    void singleBarBucketIsPassedThrough() {
+        StockBarApi only = bar(5, 1.0, 2.0, 0.5, 1.5, 10, 1);
+
+        List<StockBarApi> out = run(List.of(only, bar(95, 1.5, 1.6, 1.4, 1.5, 10, 1)), 0, 100, 2);
+
+        assertEquals(2, out.size());
+        assertSame(only, out.get(0));
+    }
+
+    @Test
+    void missingHighLowFallBackToClose() {
+        List<StockBarApi> out = run(List.of(
+                bar(0, 10.0, null, null, 12.0, 1, 1),
+                bar(1, 12.0, null, null, 9.0, 1, 1)
+        ), 0, 10, 1);
+
+        assertEquals(1, out.size());
+        assertEquals(12.0, out.get(0).getHighPrice());
+        assertEquals(9.0, out.get(0).getLowPrice());
+    }
+
+    @Test
+    void noLimitOrEmptyRangeReturnsBarsUnchanged() {
+        List<StockBarApi> bars = List.of(bar(0, 1.0, 1.0, 1.0, 1.0, 1, 1), bar(1, 2.0, 2.0, 2.0, 2.0, 1, 1));
+
+        assertEquals(bars, run(bars, 0, 10, 0));
+        assertEquals(bars, run(bars, 10, 10, 5));
+    }
+
+    @Test
+    void bucketCountNeverExceedsMaxPoints() {
+        List<StockBarApi> bars = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) bars.add(bar(i * 60_000L, 1.0, 1.0, 1.0, 1.0, 1, 1));
+
+        List<StockBarApi> out = run(bars, 0, 999 * 60_000L, 37);
+
+        assertEquals(37, out.size());
+        assertEquals(1_000L, out.stream().mapToLong(StockBarApi::getVolume).sum());
+    }
+}
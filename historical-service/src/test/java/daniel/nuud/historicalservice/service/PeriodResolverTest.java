@@ -0,0 +1,69 @@
+package daniel.nuud.historicalservice.service;
+
+import daniel.nuud.historicalservice.model.Period;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PeriodResolverTest {
+
+    private static final ZoneId NY = ZoneId.of("America/New_York");
+
+    private static PeriodResolver at(int year, int month, int day, int hour, int minute) {
+        ZonedDateTime t = ZonedDateTime.of(year, month, day, hour, minute, 0, 0, NY);
+        return new PeriodResolver(Clock.fixed(t.toInstant(), ZoneOffset.UTC));
+    }
+
+    @Test
+    void sessionIsFourToEightNewYorkTimeOnWeekdays() {
+        // вторник 2024-01-16, EST
+        assertFalse(at(2024, 1, 16, 3, 59).inSession());
+        assertTrue(at(2024, 1, 16, 4, 0).inSession());
+        assertTrue(at(2024, 1, 16, 19, 59).inSession());
+        assertFalse(at(2024, 1, 16, 20, 0).inSession());
+        // летом (EDT) граница та же по местному времени
+        assertTrue(at(2024, 7, 16, 4, 0).inSession());
+        assertFalse(at(2024, 7, 16, 20, 30).inSession());
+    }
+
+    @Test
+    void noSessionOnWeekends() {
+        assertFalse(at(2024, 1, 20, 12, 0).inSession());
+        assertFalse(at(2024, 1, 21, 12, 0).inSession());
+    }
+
+    @Test
+    void eveningSessionStaysInItsNewYorkDay() {
+        // вторник 20:30 EDT — в UTC уже среда
+        PeriodResolver.ChartRange today = at(2024, 7, 16, 20, 30).resolve(Period.TODAY);
+        assertEquals(LocalDate.of(2024, 7, 16), today.from());
+        assertEquals(LocalDate.of(2024, 7, 16), today.to());
+        assertEquals(ZonedDateTime.of(2024, 7, 16, 0, 0, 0, 0, NY).toInstant().toEpochMilli(), today.fromTs());
+        assertEquals(ZonedDateTime.of(2024, 7, 17, 0, 0, 0, 0, NY).toInstant().toEpochMilli(), today.toTs());
+    }
+
+    @Test
+    void fridayEveningIsStillFriday() {
+        // пятница 21:00 EST — в UTC уже суббота, но выходные ещё не начались
+        PeriodResolver resolver = at(2024, 1, 19, 21, 0);
+        assertEquals(LocalDate.of(2024, 1, 19), resolver.today());
+        assertEquals(LocalDate.of(2024, 1, 19), resolver.resolve(Period.TODAY).from());
+        assertEquals(LocalDate.of(2024, 1, 18), resolver.resolve(Period.YESTERDAY).from());
+    }
+
+    @Test
+    void dayClosesAfterEveningSession() {
+        assertEquals(LocalDate.of(2024, 7, 16), at(2024, 7, 16, 19, 59).firstOpenDay());
+        assertEquals(LocalDate.of(2024, 7, 17), at(2024, 7, 16, 20, 0).firstOpenDay());
+        // 00:30 ET — прошлый день уже закрыт, текущий ещё нет
+        assertEquals(LocalDate.of(2024, 7, 17), at(2024, 7, 17, 0, 30).firstOpenDay());
+    }
+}
@@ -0,0 +1,112 @@
+package daniel.nuud.historicalservice.service;
+
+import daniel.nuud.historicalservice.dto.SplitApi;
+import daniel.nuud.historicalservice.dto.StockBarApi;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class SplitFactorsTest {
+
+    private static final ZoneId NY = ZoneId.of("America/New_York");
+    private static final long NOW = et(2025, 1, 2, 12, 0);
+
+    private static long et(int year, int month, int day, int hour, int minute) {
+        return ZonedDateTime.of(year, month, day, hour, minute, 0, 0, NY).toInstant().toEpochMilli();
+    }
+
+    private static SplitApi split(String date, double from, double to) {
+        SplitApi s = new SplitApi();
+        s.setExecutionDate(LocalDate.parse(date));
+        s.setSplitFrom(from);
+        s.setSplitTo(to);
+        return s;
+    }
+
+    private static StockBarApi bar(long ts, double price, long volume) {
+        StockBarApi b = new StockBarApi();
+        b.setTimestamp(ts);
+        b.setOpenPrice(price);
+        b.setHighPrice(price);
+        b.setLowPrice(price);
+        b.setClosePrice(price);
+        b.setVolumeWeight(price);
+        b.setVolume(volume);
+        return b;
+    }
+
+    // AAPL 4:1, исполнен 2020-08-31
+    private final SplitFactors aapl = SplitFactors.of(List.of(split("2020-08-31", 1, 4)));
+
+    @Test
+    void barsBeforeExecutionAreScaled() {
+        StockBarApi b = aapl.apply(bar(et(2020, 8, 28, 0, 0), 500, 1_000), NOW);
+
+        assertEquals(125.0, b.getOpenPrice());
+        assertEquals(125.0, b.getHighPrice());
+        assertEquals(125.0, b.getLowPrice());
+        assertEquals(125.0, b.getClosePrice());
+        assertEquals(125.0, b.getVolumeWeight());
+        assertEquals(4_000L, b.getVolume());
+    }
+
+    @Test
+    void executionDayBoundaryIsMidnightNewYork() {
+        // вечерняя сессия накануне: по UTC это уже 31 августа, но цены ещё до сплита
+        assertEquals(0.25, aapl.factorAt(et(2020, 8, 30, 22, 0), NOW));
+        assertEquals(0.25, aapl.factorAt(et(2020, 8, 28, 19, 59), NOW));
+        // дневной бар дня исполнения и премаркет — уже после
+        assertEquals(1.0, aapl.factorAt(et(2020, 8, 31, 0, 0), NOW));
+        assertEquals(1.0, aapl.factorAt(et(2020, 8, 31, 4, 0), NOW));
+    }
+
+    @Test
+    void splitsMultiplyAndFutureSplitsWaitForTheirDay() {
+        List<SplitApi> splits = new ArrayList<>(List.of(
+                split("2024-06-10", 1, 10),
+                split("2021-07-20", 1, 4),
+                split("2030-01-02", 1, 2)));
+        SplitFactors f = SplitFactors.of(splits);
+
+        assertEquals(3, f.size());
+        assertEquals(1.0 / 40, f.factorAt(et(2021, 1, 4, 0, 0), NOW), 1e-12);
+        assertEquals(1.0 / 10, f.factorAt(et(2023, 1, 4, 0, 0), NOW), 1e-12);
+        assertEquals(1.0, f.factorAt(et(2024, 6, 10, 0, 0), NOW));
+        // к дню исполнения последнего сплита множитель до него растёт ещё вдвое
+        assertEquals(1.0 / 80, f.factorAt(et(2021, 1, 4, 0, 0), et(2030, 1, 2, 9, 30)), 1e-12);
+    }
+
+    @Test
+    void invalidSplitsAreIgnored() {
+        List<SplitApi> splits = new ArrayList<>();
+        splits.add(split("2020-08-31", 0, 4));
+        splits.add(split("2020-08-31", 1, -1));
+        SplitApi noDate = split("2020-08-31", 1, 4);
+        noDate.setExecutionDate(null);
+        splits.add(noDate);
+
+        assertSame(SplitFactors.NONE, SplitFactors.of(splits));
+        assertSame(SplitFactors.NONE, SplitFactors.of(List.of()));
+    }
+
+    @Test
+    void barsAfterLastSplitAndWithoutTimestampAreUntouched() {
+        StockBarApi after = bar(et(2021, 3, 1, 0, 0), 120, 10);
+        assertSame(after, aapl.apply(after, NOW));
+        assertEquals(120.0, after.getClosePrice());
+
+        StockBarApi noTs = bar(0, 500, 10);
+        noTs.setTimestamp(null);
+        aapl.apply(noTs, NOW);
+        assertEquals(500.0, noTs.getClosePrice());
+        assertNull(noTs.getNumberOfTransactions());
+    }
+}
@@ -12,6 +12,7 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.time.Instant;
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -29,12 +30,39 @@ public class NotificationController {
                 .map(id -> ResponseEntity.accepted().body(Map.of("id", id)));
     }
 
+    @PostMapping("/batch")
+    public Mono<ResponseEntity<Map<String, Object>>> createNotifications(
+            @RequestBody List<CreateNotificationRequest> requests) {
+
+        return notificationService.createNotifications(requests)
+                .map(inserted -> ResponseEntity.accepted().body(Map.of("inserted", inserted)));
+    }
+
+    /** Лента по ключу (created_at, id): before/after — поле cursor из ранее полученной строки. */
     @GetMapping
-    public Flux<NotificationResponse> getNotifications(
+    public Mono<ResponseEntity<Flux<NotificationResponse>>> getNotifications(
             @RequestParam String userKey,
-            @RequestParam(required = false) Instant since) {
+            @RequestParam(required = false) Instant since,
+            @RequestParam(required = false) String before,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "100") int limit) {
+
+        return Mono.fromCallable(() -> notificationService.listNotifications(userKey, since, before, after, limit))
+                .map(ResponseEntity::ok)
+                .onErrorResume(IllegalArgumentException.class,
+                        e -> Mono.just(ResponseEntity.badRequest().build()));
+    }
+
+    @GetMapping("/unread-count")
+    public Mono<Map<String, Object>> unreadCount(@RequestParam String userKey) {
+        return notificationService.unreadCount(userKey)
+                .map(unread -> Map.of("unread", unread));
+    }
 
-        return notificationService.listNotifications(userKey, since);
+    @PatchMapping("/read-all")
+    public Mono<ResponseEntity<Map<String, Object>>> markAllRead(@RequestParam String userKey) {
+        return notificationService.markAllRead(userKey)
+                .map(updated -> ResponseEntity.ok().body(Map.of("updated", updated)));
     }
 
     @PatchMapping("/{id}/read")
@@ -0,0 +1,25 @@
+package daniel.nuud.notificationservice.dto;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Позиция в ленте уведомлений: (created_at, id) последней полученной строки.
+ * В запросах передаётся строкой вида 2025-01-01T10:00:00.123456Z_42.
+ */
+public record FeedCursor(Instant createdAt, long id) {
+
+    public static FeedCursor parse(String raw) {
+        int sep = raw == null ? -1 : raw.lastIndexOf('_');
+        if (sep <= 0) throw new IllegalArgumentException("Bad cursor: " + raw);
+        try {
+            return new FeedCursor(Instant.parse(raw.substring(0, sep)), Long.parseLong(raw.substring(sep + 1)));
+        } catch (DateTimeParseException | NumberFormatException e) {
+            throw new IllegalArgumentException("Bad cursor: " + raw, e);
+        }
+    }
+
+    public String encode() {
+        return createdAt + "_" + id;
+    }
+}
@@ -9,6 +9,7 @@ public record NotificationResponse(
         String message,
         String level,
         boolean readFlag,
-        Instant createdAt
+        Instant createdAt,
+        String cursor
 ) {
 }
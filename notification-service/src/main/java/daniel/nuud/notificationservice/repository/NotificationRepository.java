@@ -13,7 +13,7 @@ public interface NotificationRepository extends R2dbcRepository<Notification, Lo
      SELECT id, user_key, title, message, level, read_flag, created_at
      FROM notifications
      WHERE user_key = :userKey
-     ORDER BY created_at DESC
+     ORDER BY created_at DESC, id DESC
      LIMIT :limit
   """)
     Flux<Notification> findTopByUserKey(String userKey, int limit);
@@ -21,9 +21,42 @@ public interface NotificationRepository extends R2dbcRepository<Notification, Lo
     @Query("""
      SELECT id, user_key, title, message, level, read_flag, created_at
      FROM notifications
-     WHERE user_key = :userKey AND created_at > :since
-     ORDER BY created_at DESC
+     WHERE user_key = :userKey AND created_at >= :since
+     ORDER BY created_at DESC, id DESC
      LIMIT :limit
   """)
     Flux<Notification> findTopByUserKeySince(String userKey, Instant since, int limit);
-}
\ No newline at end of file
+
+    /** Страница старше курсора, от новых к старым. */
+    @Query("""
+     SELECT id, user_key, title, message, level, read_flag, created_at
+     FROM notifications
+     WHERE user_key = :userKey AND (created_at, id) < (:createdAt, :id)
+     ORDER BY created_at DESC, id DESC
+     LIMIT :limit
+  """)
+    Flux<Notification> findPageBefore(String userKey, Instant createdAt, long id, int limit);
+
+    /** Ближайшие строки новее курсора, от старых к новым — следующая страница продолжит с последней. */
+    @Query("""
+     SELECT id, user_key, title, message, level, read_flag, created_at
+     FROM notifications
+     WHERE user_key = :userKey AND (created_at, id) > (:createdAt, :id)
+     ORDER BY created_at ASC, id ASC
+     LIMIT :limit
+  """)
+    Flux<Notification> findPageAfter(String userKey, Instant createdAt, long id, int limit);
+
+    /**
+     * Строки не новее курсора, но не старше from, от новых к старым: окно перекрытия для опроса after.
+     * Транзакция, начатая раньше, может закоммитить строку с created_at меньше уже отданного курсора.
+     */
+    @Query("""
+     SELECT id, user_key, title, message, level, read_flag, created_at
+     FROM notifications
+     WHERE user_key = :userKey AND created_at >= :from AND (created_at, id) <= (:createdAt, :id)
+     ORDER BY created_at DESC, id DESC
+     LIMIT :limit
+  """)
+    Flux<Notification> findOverlapUpTo(String userKey, Instant from, Instant createdAt, long id, int limit);
+}
@@ -1,6 +1,7 @@
 package daniel.nuud.notificationservice.service;
 
 import daniel.nuud.notificationservice.dto.CreateNotificationRequest;
+import daniel.nuud.notificationservice.dto.FeedCursor;
 import daniel.nuud.notificationservice.dto.NotificationResponse;
 import daniel.nuud.notificationservice.model.Level;
 import daniel.nuud.notificationservice.model.Notification;
@@ -8,13 +9,20 @@ import daniel.nuud.notificationservice.repository.NotificationRepository;
 import jakarta.annotation.Nullable;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.StringUtils;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
 import java.util.Optional;
 
@@ -26,10 +34,18 @@ public class NotificationService {
     private final NotificationRepository notificationRepository;
     private final R2dbcEntityTemplate r2dbc;
 
+    // 5 параметров на строку; держимся далеко от лимита 65535 bind-параметров Postgres
+    private static final int BATCH_ROWS = 1000;
+    private static final int MAX_PAGE = 100;
+
+    // на сколько назад от курсора опрос after перечитывает ленту (клиент отбрасывает уже известные id)
+    @Value("${notifications.feed.after-overlap:5s}")
+    private Duration afterOverlap;
+
     public Mono<Long> createNotification(CreateNotificationRequest req) {
         log.info("Received CreateNotificationRequest {}", req);
 
-        String level = Optional.ofNullable(req.level()).orElse("INFO").toUpperCase(Locale.ROOT);
+        String level = normalizeLevel(req.level());
 
         String sql = """
             insert into notifications as n
@@ -49,22 +65,137 @@ public class NotificationService {
                 .one();
     }
 
-    public Flux<NotificationResponse> listNotifications(String userKey, @Nullable Instant since) {
-        Flux<Notification> flux = (since == null)
-                ? notificationRepository.findTopByUserKey(userKey, 100)
-                : notificationRepository.findTopByUserKeySince(userKey, since, 100);
+    /** Вставляет пачку одним multi-row INSERT на каждые BATCH_ROWS строк; дубликаты по dedupe_key пропускаются. */
+    public Mono<Long> createNotifications(List<CreateNotificationRequest> requests) {
+        List<CreateNotificationRequest> valid = requests.stream().filter(this::isValid).toList();
+        if (valid.size() < requests.size()) {
+            log.warn("Skipped {} invalid notifications in batch", requests.size() - valid.size());
+        }
+        log.info("Received batch of {} notifications", valid.size());
+
+        List<List<CreateNotificationRequest>> chunks = new ArrayList<>();
+        for (int i = 0; i < valid.size(); i += BATCH_ROWS) {
+            chunks.add(valid.subList(i, Math.min(valid.size(), i + BATCH_ROWS)));
+        }
+
+        return Flux.fromIterable(chunks)
+                .concatMap(this::insertBatch)
+                .reduce(0L, Long::sum);
+    }
+
+    private Mono<Long> insertBatch(List<CreateNotificationRequest> rows) {
+        DatabaseClient.GenericExecuteSpec spec = r2dbc.getDatabaseClient().sql(insertSql(rows.size()));
+        for (int i = 0; i < rows.size(); i++) {
+            CreateNotificationRequest req = rows.get(i);
+            int p = i * 5;
+            spec = spec.bind("$" + (p + 1), req.userKey())
+                    .bind("$" + (p + 2), req.title())
+                    .bind("$" + (p + 3), req.message())
+                    .bind("$" + (p + 4), normalizeLevel(req.level()))
+                    .bind("$" + (p + 5), req.dedupeKey());
+        }
+        return spec.fetch().rowsUpdated();
+    }
+
+    /** INSERT на rows строк по 5 параметров ($1..$5 — первая строка, $6..$10 — вторая, ...). */
+    static String insertSql(int rows) {
+        StringBuilder sql = new StringBuilder("""
+            insert into notifications as n
+                (user_key, title, message, level, dedupe_key)
+            values
+            """);
+        for (int i = 0; i < rows; i++) {
+            int p = i * 5;
+            if (i > 0) sql.append(", ");
+            sql.append("($").append(p + 1).append(", $").append(p + 2).append(", $").append(p + 3)
+                    .append(", $").append(p + 4).append(", $").append(p + 5).append(')');
+        }
+        return sql.append(" ON CONFLICT (dedupe_key) DO NOTHING").toString();
+    }
+
+    /**
+     * Лента пользователя от новых к старым, не больше limit строк (для after — до 2 * limit: плюс окно перекрытия).
+     * before — страница старше курсора, after — строки новее курсора (для опроса) и вслед за ними не больше
+     * limit строк окна after-overlap до курсора включительно, since — по времени, включительно.
+     * @throws IllegalArgumentException если курсор не разбирается
+     */
+    public Flux<NotificationResponse> listNotifications(String userKey, @Nullable Instant since,
+                                                        @Nullable String before, @Nullable String after, int limit) {
+        int n = Math.max(1, Math.min(limit, MAX_PAGE));
+
+        Flux<Notification> flux;
+        if (after != null) {
+            FeedCursor c = FeedCursor.parse(after);
+            // выбираются по возрастанию, чтобы не перескочить строки при большом приросте; отдаём по убыванию
+            Flux<Notification> newer = notificationRepository.findPageAfter(userKey, c.createdAt(), c.id(), n)
+                    .collectList()
+                    .flatMapIterable(list -> {
+                        Collections.reverse(list);
+                        return list;
+                    });
+            // created_at и id выдаются до коммита: строка транзакции, закоммиченной после прошлого опроса,
+            // может лечь позади курсора, и запрос после курсора её уже не вернёт. Поэтому окно after-overlap
+            // перечитывается отдельно, не больше n строк; клиент отбрасывает известные id. Просто сдвинуть
+            // курсор назад нельзя: при n и больше строк в окне страница не продвигалась бы дальше них.
+            Flux<Notification> overlap = notificationRepository.findOverlapUpTo(
+                    userKey, c.createdAt().minus(afterOverlap), c.createdAt(), c.id(), n);
+            flux = newer.concatWith(overlap);
+        } else if (before != null) {
+            FeedCursor c = FeedCursor.parse(before);
+            flux = notificationRepository.findPageBefore(userKey, c.createdAt(), c.id(), n);
+        } else if (since != null) {
+            flux = notificationRepository.findTopByUserKeySince(userKey, since, n);
+        } else {
+            flux = notificationRepository.findTopByUserKey(userKey, n);
+        }
 
         return flux.map(this::toResponse);
     }
 
+    /** Число непрочитанных из счётчика, который ведут триггеры на notifications. */
+    public Mono<Long> unreadCount(String userKey) {
+        return r2dbc.getDatabaseClient()
+                .sql("select unread from notification_unread where user_key = $1")
+                .bind("$1", userKey)
+                .map(row -> row.get("unread", Long.class))
+                .one()
+                .defaultIfEmpty(0L);
+    }
+
     public Mono<Void> markNotificationRead(Long id) {
         return r2dbc.getDatabaseClient()
-                .sql("update notifications set read_flag = true where id = $1")
+                .sql("update notifications set read_flag = true where id = $1 and not read_flag")
                 .bind("$1", id)
                 .fetch().rowsUpdated()
                 .then();
     }
 
+    public Mono<Long> markAllRead(String userKey) {
+        return r2dbc.getDatabaseClient()
+                .sql("update notifications set read_flag = true where user_key = $1 and not read_flag")
+                .bind("$1", userKey)
+                .fetch().rowsUpdated();
+    }
+
+    private boolean isValid(CreateNotificationRequest req) {
+        return req != null
+                && StringUtils.hasText(req.userKey())
+                && StringUtils.hasText(req.title())
+                && StringUtils.hasText(req.message())
+                && StringUtils.hasText(req.dedupeKey());
+    }
+
+    // клиенты присылают и "WARN"; в таблице допустимы только значения Level
+    private String normalizeLevel(@Nullable String raw) {
+        String level = Optional.ofNullable(raw).orElse("INFO").toUpperCase(Locale.ROOT);
+        if (level.equals("WARN")) return Level.WARNING.name();
+        try {
+            return Level.valueOf(level).name();
+        } catch (IllegalArgumentException e) {
+            return Level.INFO.name();
+        }
+    }
+
     private NotificationResponse toResponse(Notification n) {
         return new NotificationResponse(
                 n.getId(),
@@ -73,7 +204,8 @@ public class NotificationService {
                 n.getMessage(),
                 n.getLevel().name(),
                 n.isReadFlag(),
-                n.getCreatedAt()
+                n.getCreatedAt(),
+                n.getCreatedAt() == null ? null : new FeedCursor(n.getCreatedAt(), n.getId()).encode()
         );
     }
 }
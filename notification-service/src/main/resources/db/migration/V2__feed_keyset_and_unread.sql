@@ -0,0 +1,83 @@
+-- лента читается по ключу (created_at, id): строки с одинаковым created_at не теряются между страницами
+drop index if exists public.ix_notifications_user_created_at;
+
+create index if not exists ix_notifications_user_created_id
+    on public.notifications (user_key, created_at desc, id desc);
+
+-- непрочитанные — малая часть таблицы; отметка "прочитано" для всех проходит только по ним
+create index if not exists ix_notifications_unread
+    on public.notifications (user_key, id)
+    where not read_flag;
+
+-- счётчик непрочитанных на пользователя вместо count(*) при каждом опросе
+create table if not exists public.notification_unread (
+    user_key  text   primary key,
+    unread    bigint not null default 0
+);
+
+insert into public.notification_unread (user_key, unread)
+select user_key, count(*) filter (where not read_flag)
+from public.notifications
+group by user_key
+on conflict (user_key) do update set unread = excluded.unread;
+
+-- триггеры уровня оператора: пачка из batch-вставки или "прочитать все" меняет счётчик одним запросом.
+-- строка счётчика заводится при первой вставке, поэтому update/delete её только обновляют
+create or replace function public.notification_unread_on_insert() returns trigger
+    language plpgsql as
+$$
+begin
+    insert into public.notification_unread as u (user_key, unread)
+    select user_key, count(*) filter (where not read_flag)
+    from inserted
+    group by user_key
+    on conflict (user_key) do update set unread = u.unread + excluded.unread;
+    return null;
+end;
+$$;
+
+create or replace function public.notification_unread_on_update() returns trigger
+    language plpgsql as
+$$
+begin
+    update public.notification_unread u
+    set unread = greatest(u.unread + d.delta, 0)
+    from (select n.user_key, sum(case when n.read_flag then -1 else 1 end) as delta
+          from new_rows n
+          join old_rows o on o.id = n.id
+          where o.read_flag <> n.read_flag
+          group by n.user_key) d
+    where u.user_key = d.user_key;
+    return null;
+end;
+$$;
+
+create or replace function public.notification_unread_on_delete() returns trigger
+    language plpgsql as
+$$
+begin
+    update public.notification_unread u
+    set unread = greatest(u.unread - d.cnt, 0)
+    from (select user_key, count(*) as cnt
+          from old_rows
+          where not read_flag
+          group by user_key) d
+    where u.user_key = d.user_key;
+    return null;
+end;
+$$;
+
+create trigger trg_notification_unread_insert
+    after insert on public.notifications
+    referencing new table as inserted
+    for each statement execute function public.notification_unread_on_insert();
+
+create trigger trg_notification_unread_update
+    after update on public.notifications
+    referencing old table as old_rows new table as new_rows
+    for each statement execute function public.notification_unread_on_update();
+
+create trigger trg_notification_unread_delete
+    after delete on public.notifications
+    referencing old table as old_rows
+    for each statement execute function public.notification_unread_on_delete();
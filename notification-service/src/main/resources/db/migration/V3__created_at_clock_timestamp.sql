@@ -0,0 +1,5 @@
+-- now() — время начала транзакции: строка долгой транзакции получала created_at раньше уже видимых строк
+-- и проскакивала мимо курсора after. clock_timestamp() — время самой вставки; остаток гонки
+-- (вставка до коммита) закрывает окно перекрытия в опросе after
+alter table public.notifications
+    alter column created_at set default clock_timestamp();
@@ -0,0 +1,135 @@
+package daniel.nuud.notificationservice.migration;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Счётчик notification_unread, который ведут триггеры V2, на настоящем Postgres. */
+@Testcontainers(disabledWithoutDocker = true)
+class UnreadCounterTriggersTest {
+
+    @Container
+    static final PostgreSQLContainer<?> PG = new PostgreSQLContainer<>("postgres:16");
+
+    @BeforeAll
+    static void migrate() {
+        Flyway.configure()
+                .dataSource(PG.getJdbcUrl(), PG.getUsername(), PG.getPassword())
+                .load()
+                .migrate();
+    }
+
+    @BeforeEach
+    void clean() throws SQLException {
+        exec("truncate notifications, notification_unread");
+    }
+
+    private static Connection connect() throws SQLException {
+        return DriverManager.getConnection(PG.getJdbcUrl(), PG.getUsername(), PG.getPassword());
+    }
+
+    private static int exec(String sql) throws SQLException {
+        try (Connection c = connect(); Statement st = c.createStatement()) {
+            return st.executeUpdate(sql);
+        }
+    }
+
+    private static long unread(String userKey) throws SQLException {
+        try (Connection c = connect(); Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("select unread from notification_unread where user_key = '" + userKey + "'")) {
+            return rs.next() ? rs.getLong(1) : -1;
+        }
+    }
+
+    private static String row(String userKey, String dedupe, boolean read) {
+        return "('" + userKey + "', 't', 'm', 'INFO', '" + dedupe + "', " + read + ")";
+    }
+
+    @Test
+    void multiRowInsertCountsUnreadPerUser() throws SQLException {
+        exec("insert into notifications (user_key, title, message, level, dedupe_key, read_flag) values "
+                + row("a", "a1", false) + ", " + row("a", "a2", false) + ", " + row("a", "a3", true) + ", "
+                + row("b", "b1", false));
+
+        assertEquals(2, unread("a"));
+        assertEquals(1, unread("b"));
+    }
+
+    @Test
+    void duplicatesSkippedByOnConflictAreNotCounted() throws SQLException {
+        exec("insert into notifications (user_key, title, message, level, dedupe_key, read_flag) values "
+                + row("a", "a1", false));
+        exec("insert into notifications (user_key, title, message, level, dedupe_key, read_flag) values "
+                + row("a", "a1", false) + ", " + row("a", "a2", false) + " on conflict (dedupe_key) do nothing");
+
+        assertEquals(2, unread("a"));
+    }
+
+    @Test
+    void readFlagChangesMoveTheCounterBothWays() throws SQLException {
+        exec("insert into notifications (user_key, title, message, level, dedupe_key, read_flag) values "
+                + row("a", "a1", false) + ", " + row("a", "a2", false) + ", " + row("a", "a3", false) + ", "
+                + row("b", "b1", false));
+
+        exec("update notifications set read_flag = true where dedupe_key = 'a1'");
+        assertEquals(2, unread("a"));
+
+        // уже прочитанная строка и изменение других полей счётчик не трогают
+        exec("update notifications set read_flag = true where dedupe_key = 'a1'");
+        exec("update notifications set title = 'x' where user_key = 'a'");
+        assertEquals(2, unread("a"));
+
+        exec("update notifications set read_flag = true where user_key = 'a' and not read_flag");
+        assertEquals(0, unread("a"));
+        assertEquals(1, unread("b"));
+
+        exec("update notifications set read_flag = false where dedupe_key = 'a2'");
+        assertEquals(1, unread("a"));
+    }
+
+    @Test
+    void deletingUnreadRowsDecrements() throws SQLException {
+        exec("insert into notifications (user_key, title, message, level, dedupe_key, read_flag) values "
+                + row("a", "a1", false) + ", " + row("a", "a2", true) + ", " + row("a", "a3", false));
+
+        exec("delete from notifications where dedupe_key in ('a1', 'a2')");
+
+        assertEquals(1, unread("a"));
+    }
+
+    @Test
+    void createdAtIsTheInsertTimeNotTheTransactionStart() throws SQLException {
+        try (Connection c = connect(); Statement st = c.createStatement()) {
+            c.setAutoCommit(false);
+            st.executeUpdate("insert into notifications (user_key, title, message, level, dedupe_key) values "
+                    + "('a', 't', 'm', 'INFO', 'first')");
+            st.execute("select pg_sleep(0.05)");
+            st.executeUpdate("insert into notifications (user_key, title, message, level, dedupe_key) values "
+                    + "('a', 't', 'm', 'INFO', 'second')");
+            c.commit();
+        }
+
+        try (Connection c = connect(); Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("select created_at from notifications order by id")) {
+            assertTrue(rs.next());
+            Timestamp first = rs.getTimestamp(1);
+            assertTrue(rs.next());
+            Timestamp second = rs.getTimestamp(1);
+            assertTrue(second.getTime() - first.getTime() >= 50, first + " / " + second);
+        }
+    }
+}
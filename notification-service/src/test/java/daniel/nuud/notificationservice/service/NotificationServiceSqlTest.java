@@ -0,0 +1,38 @@
+package daniel.nuud.notificationservice.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NotificationServiceSqlTest {
+
+    private static final Pattern ROW = Pattern.compile("\\(\\$(\\d+), \\$(\\d+), \\$(\\d+), \\$(\\d+), \\$(\\d+)\\)");
+
+    @Test
+    void singleRow() {
+        String sql = NotificationService.insertSql(1);
+
+        assertTrue(sql.contains("values\n($1, $2, $3, $4, $5) ON CONFLICT (dedupe_key) DO NOTHING"), sql);
+    }
+
+    @Test
+    void placeholdersAreSequentialAcrossRows() {
+        String sql = NotificationService.insertSql(1000);
+
+        Matcher m = ROW.matcher(sql);
+        int rows = 0;
+        int expected = 1;
+        while (m.find()) {
+            for (int g = 1; g <= 5; g++) {
+                assertEquals(expected++, Integer.parseInt(m.group(g)));
+            }
+            rows++;
+        }
+        assertEquals(1000, rows);
+        assertTrue(sql.endsWith("($4996, $4997, $4998, $4999, $5000) ON CONFLICT (dedupe_key) DO NOTHING"));
+    }
+}
@@ -0,0 +1,87 @@
+package daniel.nuud.stocksservice.service.components;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ActiveSubscription на 100k пользователей и 5k тикеров: usersOf по обратному индексу
+ * против полного обхода currentByUser (как было до индекса) и переключение тикера под нагрузкой.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ActiveSubscriptionBenchmark {
+
+    private static final ActiveSubscription.Upstream NO_UPSTREAM = new ActiveSubscription.Upstream() {
+        @Override
+        public void open(String ticker) {
+        }
+
+        @Override
+        public void close(String ticker) {
+        }
+    };
+
+    @Param({"100000"})
+    public int users;
+    @Param({"5000"})
+    public int tickers;
+
+    private ActiveSubscription active;
+    private String[] userKeys;
+    private String[] tickerNames;
+    // копия user -> ticker для базового варианта с обходом
+    private Map<String, String> currentByUser;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        active = new ActiveSubscription();
+        userKeys = new String[users];
+        tickerNames = new String[tickers];
+        for (int i = 0; i < tickers; i++) tickerNames[i] = "T" + i;
+
+        Map<String, String> current = new HashMap<>(users * 2);
+        for (int i = 0; i < users; i++) {
+            userKeys[i] = "user-" + i;
+            String ticker = tickerNames[i % tickers];
+            active.subscribe(userKeys[i], ticker, NO_UPSTREAM);
+            current.put(userKeys[i], ticker);
+        }
+        currentByUser = current;
+    }
+
+    @Benchmark
+    public void usersOfIndexed(Blackhole bh) {
+        String ticker = tickerNames[ThreadLocalRandom.current().nextInt(tickers)];
+        for (String user : active.usersOf(ticker)) bh.consume(user);
+    }
+
+    @Benchmark
+    public void usersOfScan(Blackhole bh) {
+        String ticker = tickerNames[ThreadLocalRandom.current().nextInt(tickers)];
+        for (Map.Entry<String, String> e : currentByUser.entrySet()) {
+            if (ticker.equals(e.getValue())) bh.consume(e.getKey());
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public ActiveSubscription.Change switchTicker() {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        return active.subscribe(userKeys[rnd.nextInt(users)], tickerNames[rnd.nextInt(tickers)], NO_UPSTREAM);
+    }
+}
@@ -0,0 +1,81 @@
+package daniel.nuud.stocksservice.service.components;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import daniel.nuud.stocksservice.model.Tick;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Разбор AM-фрейма Polygon: однопроходный парсер против прежнего разбора через org.json
+ * и разбора в дерево (Jackson). Фреймы — mocks/polygon-ws/am_N.json, N событий по 5 тикерам,
+ * собранные из записанных баров mocks/wiremock/__files/historical. Аллокации на фрейм: -prof gc.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PolygonFrameParserBenchmark {
+
+    @Param({"1", "20", "200"})
+    public int events;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private String frame;
+
+    @Setup
+    public void setUp() throws Exception {
+        Path dir = Path.of(System.getProperty("fixtures.dir", "../mocks/polygon-ws"));
+        frame = Files.readString(dir.resolve("am_" + events + ".json"));
+    }
+
+    @Benchmark
+    public void streaming(Blackhole bh) {
+        PolygonFrameParser.parse(frame, new PolygonFrameParser.Listener() {
+            @Override
+            public void onAggregate(Tick tick) {
+                bh.consume(tick);
+            }
+
+            @Override
+            public void onStatus(String status, String message) {
+                bh.consume(status);
+            }
+        });
+    }
+
+    /** Прежний PolygonMessageProcessor: JSONArray/JSONObject на каждый фрейм. */
+    @Benchmark
+    public void orgJson(Blackhole bh) {
+        JSONArray arr = new JSONArray(frame);
+        for (int i = 0; i < arr.length(); i++) {
+            JSONObject json = arr.getJSONObject(i);
+            if (!"AM".equals(json.optString("ev", ""))) continue;
+            bh.consume(new Tick(json.getString("sym"), json.getDouble("o"), json.getDouble("h"),
+                    json.getDouble("l"), json.getDouble("c"), json.getLong("s"), json.getLong("e"),
+                    json.optDouble("v"), json.optDouble("vw"), json.optDouble("a")));
+        }
+    }
+
+    @Benchmark
+    public void jacksonTree(Blackhole bh) throws Exception {
+        for (JsonNode n : mapper.readTree(frame)) {
+            if (!"AM".equals(n.path("ev").asText())) continue;
+            bh.consume(new Tick(n.path("sym").asText(), n.path("o").asDouble(), n.path("h").asDouble(),
+                    n.path("l").asDouble(), n.path("c").asDouble(), n.path("s").asLong(), n.path("e").asLong(),
+                    n.path("v").asDouble(), n.path("vw").asDouble(), n.path("a").asDouble()));
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package daniel.nuud.stocksservice.service.components;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import daniel.nuud.stocksservice.dto.AnalyticsDto;
+import daniel.nuud.stocksservice.dto.PriceFrame;
+import daniel.nuud.stocksservice.dto.StockPriceDto;
+import daniel.nuud.stocksservice.dto.WindowStatsDto;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость раздачи одного тика N сессиям: JSON кодируется один раз в PricesHub и каждая
+ * сессия лишь оборачивает общий byte[] против сериализации в каждой сессии.
+ * Результат — время на тик; CPU на подписчика = score / subscribers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PriceFanOutBenchmark {
+
+    @Param({"1", "100", "1000"})
+    public int subscribers;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final DefaultDataBufferFactory buffers = DefaultDataBufferFactory.sharedInstance;
+    private final PricesHub hub = new PricesHub();
+    private StockPriceDto dto;
+
+    @Setup
+    public void setUp() {
+        WindowStatsDto window = new WindowStatsDto("60s", 189.3, 189.55, 189.21, 189.42, 189.4021, 12_000, 12);
+        AnalyticsDto analytics = new AnalyticsDto("AAPL", 1_700_000_060_000L, 0.0123, List.of(window));
+        dto = new StockPriceDto("AAPL", 189.42, 1_700_000_060_000L, analytics);
+    }
+
+    @Benchmark
+    public void encodeOnceShareBytes(Blackhole bh) {
+        PriceFrame frame = hub.frame(dto);
+        for (int i = 0; i < subscribers; i++) {
+            DataBuffer buf = buffers.wrap(frame.json());
+            bh.consume(buf);
+        }
+    }
+
+    @Benchmark
+    public void encodePerSession(Blackhole bh) throws Exception {
+        for (int i = 0; i < subscribers; i++) {
+            String json = mapper.writeValueAsString(dto);
+            DataBuffer buf = buffers.wrap(json.getBytes(StandardCharsets.UTF_8));
+            bh.consume(buf);
+        }
+    }
+}
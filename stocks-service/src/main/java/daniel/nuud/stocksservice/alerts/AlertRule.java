@@ -0,0 +1,22 @@
+package daniel.nuud.stocksservice.alerts;
+
+/**
+ * Правило пользователя на тикер. windowMinutes используется только для MOVE_PERCENT.
+ */
+public record AlertRule(
+        long id,
+        String userKey,
+        String ticker,
+        RuleType type,
+        double threshold,
+        int windowMinutes
+) {
+    /** true — правило срабатывает при пересечении порога снизу вверх. */
+    public boolean rising() {
+        return switch (type) {
+            case PRICE_ABOVE -> true;
+            case PRICE_BELOW -> false;
+            default -> threshold >= 0;
+        };
+    }
+}
@@ -0,0 +1,131 @@
+package daniel.nuud.stocksservice.alerts;
+
+import java.util.function.ObjDoubleConsumer;
+
+/**
+ * Пороги одной метрики тикера в отсортированных примитивных массивах.
+ * На тик бинарным поиском выбирается диапазон между прошлым и текущим значением метрики,
+ * поэтому срабатывают только пересечённые пороги, а стоимость тика — O(log n + k).
+ * update() вызывается из одной полосы IngestPipeline и читает неизменяемый снимок без блокировок;
+ * add/remove из любых потоков собирают новый снимок (copy-on-write) под монитором индекса.
+ */
+final class CrossingIndex {
+
+    /** Неизменяемый снимок: thresholds отсортированы, rules[i] относится к thresholds[i]. */
+    private static final class Levels {
+        static final Levels EMPTY = new Levels(new double[0], new AlertRule[0]);
+
+        final double[] thresholds;
+        final AlertRule[] rules;
+
+        Levels(double[] thresholds, AlertRule[] rules) {
+            this.thresholds = thresholds;
+            this.rules = rules;
+        }
+
+        Levels insert(AlertRule rule) {
+            int n = thresholds.length;
+            int at = upperBound(thresholds, rule.threshold());
+
+            double[] t = new double[n + 1];
+            AlertRule[] r = new AlertRule[n + 1];
+            System.arraycopy(thresholds, 0, t, 0, at);
+            System.arraycopy(rules, 0, r, 0, at);
+            t[at] = rule.threshold();
+            r[at] = rule;
+            System.arraycopy(thresholds, at, t, at + 1, n - at);
+            System.arraycopy(rules, at, r, at + 1, n - at);
+            return new Levels(t, r);
+        }
+
+        Levels delete(AlertRule rule) {
+            int at = -1;
+            for (int i = lowerBound(thresholds, rule.threshold()), to = upperBound(thresholds, rule.threshold());
+                 i < to; i++) {
+                if (rules[i].id() == rule.id()) {
+                    at = i;
+                    break;
+                }
+            }
+            if (at < 0) return this;
+
+            int n = thresholds.length;
+            if (n == 1) return EMPTY;
+            double[] t = new double[n - 1];
+            AlertRule[] r = new AlertRule[n - 1];
+            System.arraycopy(thresholds, 0, t, 0, at);
+            System.arraycopy(rules, 0, r, 0, at);
+            System.arraycopy(thresholds, at + 1, t, at, n - at - 1);
+            System.arraycopy(rules, at + 1, r, at, n - at - 1);
+            return new Levels(t, r);
+        }
+    }
+
+    // up срабатывают при росте метрики через порог, down — при падении
+    private volatile Levels up = Levels.EMPTY;
+    private volatile Levels down = Levels.EMPTY;
+
+    private double last = Double.NaN;
+
+    synchronized void add(AlertRule rule) {
+        if (rule.rising()) up = up.insert(rule);
+        else down = down.insert(rule);
+    }
+
+    synchronized void remove(AlertRule rule) {
+        if (rule.rising()) up = up.delete(rule);
+        else down = down.delete(rule);
+    }
+
+    boolean isEmpty() {
+        return up.thresholds.length == 0 && down.thresholds.length == 0;
+    }
+
+    /** Задать точку отсчёта без срабатываний (например, 0% гэпа на смене дня). */
+    void rebase(double value) {
+        last = value;
+    }
+
+    /** Принять новое значение метрики и вызвать fire для каждого пересечённого порога. */
+    void update(double value, ObjDoubleConsumer<AlertRule> fire) {
+        double prev = last;
+        last = value;
+        if (Double.isNaN(prev) || Double.isNaN(value) || value == prev) return;
+
+        if (value > prev) {
+            // (prev, value]: порог ровно на прошлом значении уже был пересечён раньше
+            Levels l = up;
+            for (int i = upperBound(l.thresholds, prev), to = upperBound(l.thresholds, value); i < to; i++) {
+                fire.accept(l.rules[i], value);
+            }
+        } else {
+            // [value, prev)
+            Levels l = down;
+            for (int i = lowerBound(l.thresholds, value), to = lowerBound(l.thresholds, prev); i < to; i++) {
+                fire.accept(l.rules[i], value);
+            }
+        }
+    }
+
+    /** Первый индекс с a[i] >= key. */
+    private static int lowerBound(double[] a, double key) {
+        int lo = 0, hi = a.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (a[mid] < key) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /** Первый индекс с a[i] > key. */
+    private static int upperBound(double[] a, double key) {
+        int lo = 0, hi = a.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (a[mid] <= key) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,61 @@
+package daniel.nuud.stocksservice.alerts;
+
+import daniel.nuud.stocksservice.model.Tick;
+
+import java.util.function.ObjDoubleConsumer;
+
+/**
+ * Скользящее окно цен для MOVE_PERCENT: изменение считается от самой старой цены в окне.
+ * Одно окно на тикер и длительность, общее для всех правил с этой длительностью.
+ * Кольцевой буфер на примитивах, растёт по степеням двойки.
+ */
+final class MoveWindow {
+
+    final CrossingIndex index = new CrossingIndex();
+    private final long windowMs;
+
+    private long[] ts = new long[16];
+    private double[] px = new double[16];
+    private int head;
+    private int size;
+
+    MoveWindow(int windowMinutes) {
+        this.windowMs = windowMinutes * 60_000L;
+    }
+
+    void onTick(Tick tick, ObjDoubleConsumer<AlertRule> fire) {
+        push(tick.timestamp(), tick.close());
+
+        long from = tick.timestamp() - windowMs;
+        int mask = ts.length - 1;
+        while (size > 1 && ts[head] < from) {
+            head = (head + 1) & mask;
+            size--;
+        }
+
+        double ref = px[head];
+        if (ref > 0) index.update(RuleEngine.percent(tick.close(), ref), fire);
+    }
+
+    private void push(long t, double p) {
+        if (size == ts.length) grow();
+        int tail = (head + size) & (ts.length - 1);
+        ts[tail] = t;
+        px[tail] = p;
+        size++;
+    }
+
+    private void grow() {
+        int n = ts.length;
+        long[] nts = new long[n << 1];
+        double[] npx = new double[n << 1];
+        for (int i = 0; i < size; i++) {
+            int j = (head + i) & (n - 1);
+            nts[i] = ts[j];
+            npx[i] = px[j];
+        }
+        ts = nts;
+        px = npx;
+        head = 0;
+    }
+}
@@ -0,0 +1,166 @@
+package daniel.nuud.stocksservice.alerts;
+
+import daniel.nuud.stocksservice.model.Tick;
+import daniel.nuud.stocksservice.notification.NotificationClient;
+import daniel.nuud.stocksservice.service.components.TickListener;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Пользовательские правила алертов поверх потока тиков.
+ * Правила хранятся по тикеру и метрике в отсортированных индексах порогов (CrossingIndex):
+ * тик обходит только пересечённые пороги, а не все правила тикера.
+ * Срабатывания уходят в notification-service пачками через NotificationClient.
+ * Правило срабатывает не чаще раза в stocks.alerts.rule-cooldown-ms (по времени тиков):
+ * цена, которая ходит вокруг порога, иначе давала бы алерт на каждом пересечении.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RuleEngine implements TickListener {
+
+    private static final int MAX_WINDOW_MINUTES = 24 * 60;
+
+    private final NotificationClient notificationClient;
+
+    private final ConcurrentHashMap<String, TickerRules> byTicker = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, AlertRule> byId = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<Long>> byUser = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong();
+    // id правила -> время тика последнего срабатывания
+    private final ConcurrentHashMap<Long, Long> lastFired = new ConcurrentHashMap<>();
+
+    @Value("${stocks.alerts.rule-cooldown-ms:300000}")
+    private long cooldownMs;
+
+    /** Завести правило. @throws IllegalArgumentException если параметры не подходят к типу. */
+    public AlertRule register(String userKey, String rawTicker, RuleType type, double threshold,
+                              Integer windowMinutes) {
+        final String user = normUser(userKey);
+        final String ticker = norm(rawTicker);
+        validate(ticker, type, threshold, windowMinutes);
+
+        int window = type == RuleType.MOVE_PERCENT ? windowMinutes : 0;
+        AlertRule rule = new AlertRule(ids.incrementAndGet(), user, ticker, type, threshold, window);
+
+        byId.put(rule.id(), rule);
+        byUser.computeIfAbsent(user, k -> ConcurrentHashMap.newKeySet()).add(rule.id());
+        byTicker.compute(ticker, (k, rules) -> {
+            if (rules == null) rules = new TickerRules();
+            rules.add(rule);
+            return rules;
+        });
+
+        log.info("Alert rule {} registered: {}", rule.id(), rule);
+        return rule;
+    }
+
+    /** Удалить правило пользователя. @return false — если правила нет или оно чужое. */
+    public boolean remove(String userKey, long id) {
+        final String user = normUser(userKey);
+        AlertRule rule = byId.get(id);
+        if (rule == null || !rule.userKey().equals(user) || !byId.remove(id, rule)) return false;
+
+        byUser.computeIfPresent(user, (k, rules) -> {
+            rules.remove(id);
+            return rules.isEmpty() ? null : rules;
+        });
+        byTicker.computeIfPresent(rule.ticker(), (k, rules) -> {
+            rules.remove(rule);
+            return rules.isEmpty() ? null : rules;
+        });
+        lastFired.remove(id);
+        return true;
+    }
+
+    public List<AlertRule> rulesOf(String userKey) {
+        Set<Long> mine = byUser.get(normUser(userKey));
+        if (mine == null) return List.of();
+        return mine.stream()
+                .map(byId::get)
+                .filter(Objects::nonNull)
+                .sorted(Comparator.comparingLong(AlertRule::id))
+                .toList();
+    }
+
+    @Override
+    public void onTick(Tick tick) {
+        TickerRules rules = byTicker.get(tick.ticker());
+        if (rules != null) rules.onTick(tick, (rule, value) -> fire(rule, value, tick.timestamp()));
+    }
+
+    private void fire(AlertRule rule, double value, long timestamp) {
+        if (!claim(rule.id(), timestamp)) return;
+        notificationClient.enqueue(
+                rule.userKey(),
+                "Alert: " + rule.ticker(),
+                message(rule, value),
+                "WARN",
+                "STOCKS:RULE:" + rule.id()
+        );
+    }
+
+    /** true — правило вне паузы; время срабатывания запоминается. */
+    private boolean claim(long ruleId, long timestamp) {
+        boolean[] allowed = {false};
+        lastFired.compute(ruleId, (k, prev) -> {
+            if (prev != null && timestamp - prev < cooldownMs) return prev;
+            allowed[0] = true;
+            return timestamp;
+        });
+        return allowed[0];
+    }
+
+    private static String message(AlertRule r, double value) {
+        return switch (r.type()) {
+            case PRICE_ABOVE -> String.format(Locale.US, "%s crossed above %.2f (now %.2f)",
+                    r.ticker(), r.threshold(), value);
+            case PRICE_BELOW -> String.format(Locale.US, "%s crossed below %.2f (now %.2f)",
+                    r.ticker(), r.threshold(), value);
+            case MOVE_PERCENT -> String.format(Locale.US, "%s moved %+.2f%% in %d min (rule %+.2f%%)",
+                    r.ticker(), value, r.windowMinutes(), r.threshold());
+            case VWAP_DEVIATION -> String.format(Locale.US, "%s is %+.2f%% from day VWAP (rule %+.2f%%)",
+                    r.ticker(), value, r.threshold());
+            case GAP_PERCENT -> String.format(Locale.US, "%s gapped %+.2f%% from previous close (rule %+.2f%%)",
+                    r.ticker(), value, r.threshold());
+        };
+    }
+
+    private static void validate(String ticker, RuleType type, double threshold, Integer windowMinutes) {
+        if (ticker.isEmpty()) throw new IllegalArgumentException("ticker is required");
+        if (type == null) throw new IllegalArgumentException("type is required");
+        if (!Double.isFinite(threshold)) throw new IllegalArgumentException("threshold must be a number");
+
+        switch (type) {
+            case PRICE_ABOVE, PRICE_BELOW -> {
+                if (threshold <= 0) throw new IllegalArgumentException("price threshold must be positive");
+            }
+            case MOVE_PERCENT -> {
+                if (windowMinutes == null || windowMinutes < 1 || windowMinutes > MAX_WINDOW_MINUTES)
+                    throw new IllegalArgumentException("windowMinutes must be within 1.." + MAX_WINDOW_MINUTES);
+                if (threshold == 0) throw new IllegalArgumentException("percent threshold must not be zero");
+            }
+            default -> {
+                if (threshold == 0) throw new IllegalArgumentException("percent threshold must not be zero");
+            }
+        }
+    }
+
+    /** Изменение value относительно ref в процентах. */
+    static double percent(double value, double ref) {
+        return (value - ref) / ref * 100.0;
+    }
+
+    private static String norm(String t) { return t == null ? "" : t.trim().toUpperCase(Locale.ROOT); }
+    private static String normUser(String u) { return (u == null || u.isBlank()) ? "guest" : u.trim(); }
+}
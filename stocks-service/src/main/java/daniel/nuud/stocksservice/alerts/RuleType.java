@@ -0,0 +1,18 @@
+package daniel.nuud.stocksservice.alerts;
+
+/**
+ * Виды правил. Для процентных правил знак порога задаёт направление:
+ * +5 — рост на 5% и больше, -5 — падение на 5% и больше.
+ */
+public enum RuleType {
+    /** Цена пересекла порог снизу вверх. */
+    PRICE_ABOVE,
+    /** Цена пересекла порог сверху вниз. */
+    PRICE_BELOW,
+    /** Изменение в % за последние windowMinutes минут. */
+    MOVE_PERCENT,
+    /** Отклонение цены от дневного VWAP в %. */
+    VWAP_DEVIATION,
+    /** Гэп в % от закрытия предыдущего дня. */
+    GAP_PERCENT
+}
@@ -0,0 +1,90 @@
+package daniel.nuud.stocksservice.alerts;
+
+import daniel.nuud.stocksservice.model.Tick;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ObjDoubleConsumer;
+
+/**
+ * Все правила одного тикера, разложенные по метрикам, и состояние этих метрик.
+ * Скользящие окна MOVE_PERCENT заводятся только под длительности, на которые есть правила.
+ * Дни для гэпа — календарные дни биржи (America/New_York), иначе вечерняя сессия после 19:00/20:00 ET
+ * попадала бы в следующий UTC-день и гэп считался бы посреди торгов.
+ */
+final class TickerRules {
+
+    private static final ZoneId MARKET = ZoneId.of("America/New_York");
+
+    private final CrossingIndex price = new CrossingIndex();
+    private final CrossingIndex vwap = new CrossingIndex();
+    private final CrossingIndex gap = new CrossingIndex();
+    // длительность окна (мин) -> окно
+    private final ConcurrentHashMap<Integer, MoveWindow> moves = new ConcurrentHashMap<>();
+
+    // для гэпа: закрытие предыдущего торгового дня; границы текущего дня [dayFrom, dayTo) в мс,
+    // чтобы не считать зону на каждый тик (dayTo == 0 — тиков ещё не было)
+    private long dayFrom = 1;
+    private long dayTo = 0;
+    private double lastClose = Double.NaN;
+    private double prevClose = Double.NaN;
+
+    /** Вызывается под RuleEngine.byTicker.compute. */
+    void add(AlertRule rule) {
+        if (rule.type() == RuleType.MOVE_PERCENT) {
+            moves.computeIfAbsent(rule.windowMinutes(), MoveWindow::new).index.add(rule);
+        } else {
+            indexFor(rule.type()).add(rule);
+        }
+    }
+
+    /** Вызывается под RuleEngine.byTicker.computeIfPresent. */
+    void remove(AlertRule rule) {
+        if (rule.type() == RuleType.MOVE_PERCENT) {
+            moves.computeIfPresent(rule.windowMinutes(), (k, w) -> {
+                w.index.remove(rule);
+                return w.index.isEmpty() ? null : w;
+            });
+        } else {
+            indexFor(rule.type()).remove(rule);
+        }
+    }
+
+    boolean isEmpty() {
+        return price.isEmpty() && vwap.isEmpty() && gap.isEmpty() && moves.isEmpty();
+    }
+
+    void onTick(Tick tick, ObjDoubleConsumer<AlertRule> fire) {
+        double close = tick.close();
+
+        long ts = tick.timestamp();
+        if (ts < dayFrom || ts >= dayTo) {
+            if (dayTo != 0) {
+                prevClose = lastClose;
+                // первый тик нового дня и есть гэп: считаем от 0%
+                gap.rebase(0);
+            }
+            LocalDate d = Instant.ofEpochMilli(ts).atZone(MARKET).toLocalDate();
+            dayFrom = d.atStartOfDay(MARKET).toInstant().toEpochMilli();
+            dayTo = d.plusDays(1).atStartOfDay(MARKET).toInstant().toEpochMilli();
+        }
+        lastClose = close;
+
+        // last в индексах обновляем всегда, чтобы новое правило не сработало на устаревшем значении
+        price.update(close, fire);
+        if (tick.dayVwap() > 0) vwap.update(RuleEngine.percent(close, tick.dayVwap()), fire);
+        if (prevClose > 0) gap.update(RuleEngine.percent(close, prevClose), fire);
+        for (MoveWindow w : moves.values()) w.onTick(tick, fire);
+    }
+
+    private CrossingIndex indexFor(RuleType type) {
+        return switch (type) {
+            case PRICE_ABOVE, PRICE_BELOW -> price;
+            case VWAP_DEVIATION -> vwap;
+            case GAP_PERCENT -> gap;
+            case MOVE_PERCENT -> throw new IllegalArgumentException("MOVE_PERCENT has per-window indexes");
+        };
+    }
+}
@@ -0,0 +1,47 @@
+package daniel.nuud.stocksservice.controller;
+
+import daniel.nuud.stocksservice.alerts.AlertRule;
+import daniel.nuud.stocksservice.alerts.RuleEngine;
+import daniel.nuud.stocksservice.dto.AlertRuleRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/alerts/rules")
+@RequiredArgsConstructor
+public class AlertRuleController {
+
+    private final RuleEngine ruleEngine;
+
+    @PostMapping
+    public Mono<ResponseEntity<AlertRule>> create(@RequestBody AlertRuleRequest request,
+                                                  @RequestHeader(value="X-User-Key", required=false) String userKey) {
+        return Mono.fromCallable(() -> ruleEngine.register(
+                        userKey,
+                        request.ticker(),
+                        request.type(),
+                        request.threshold() == null ? Double.NaN : request.threshold(),
+                        request.windowMinutes()))
+                .map(ResponseEntity::ok)
+                .onErrorResume(IllegalArgumentException.class,
+                        e -> Mono.just(ResponseEntity.badRequest().build()));
+    }
+
+    @GetMapping
+    public Mono<List<AlertRule>> list(@RequestHeader(value="X-User-Key", required=false) String userKey) {
+        return Mono.fromCallable(() -> ruleEngine.rulesOf(userKey));
+    }
+
+    @DeleteMapping("/{id}")
+    public Mono<ResponseEntity<Void>> delete(@PathVariable long id,
+                                             @RequestHeader(value="X-User-Key", required=false) String userKey) {
+        return Mono.fromCallable(() -> ruleEngine.remove(userKey, id))
+                .map(removed -> removed
+                        ? ResponseEntity.noContent().<Void>build()
+                        : ResponseEntity.notFound().<Void>build());
+    }
+}
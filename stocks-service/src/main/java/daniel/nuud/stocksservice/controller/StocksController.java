@@ -1,5 +1,7 @@
 package daniel.nuud.stocksservice.controller;
 
+import daniel.nuud.stocksservice.dto.AnalyticsDto;
+import daniel.nuud.stocksservice.service.StocksPriceService;
 import daniel.nuud.stocksservice.service.components.ActiveSubscription;
 import daniel.nuud.stocksservice.service.WebSocketClient;
 import jakarta.annotation.Nullable;
@@ -15,13 +17,14 @@ public class StocksController {
 
     private final WebSocketClient polygonClient;
     private final ActiveSubscription activeSubscription;
+    private final StocksPriceService stocksPriceService;
 
     @PostMapping("/subscribe/{ticker}")
     public Mono<ResponseEntity<Void>> subscribe(@PathVariable String ticker,
                                                 @RequestHeader(value="X-User-Key", required=false) String userKey) {
         return Mono.fromRunnable(() -> {
-            boolean first = activeSubscription.subscribe(userKey, ticker);
-            if (first) polygonClient.subscribeTo(ticker);   // 0 -> 1
+            // 0 -> 1 и 1 -> 0 включают/выключают стрим Polygon внутри ActiveSubscription
+            activeSubscription.subscribe(userKey, ticker, polygonClient);
         }).thenReturn(ResponseEntity.accepted().build());
     }
 
@@ -29,9 +32,14 @@ public class StocksController {
     public Mono<ResponseEntity<Void>> unsubscribe(@PathVariable String ticker,
                                                   @RequestHeader(value="X-User-Key", required=false) String userKey) {
         return Mono.fromRunnable(() -> {
-            boolean last = activeSubscription.unsubscribe(userKey, ticker);
-            if (last) polygonClient.unsubscribe(ticker); // 1 -> 0
+            activeSubscription.unsubscribe(userKey, ticker, polygonClient);
         }).thenReturn(ResponseEntity.accepted().build());
     }
-}
 
+    @GetMapping("/{ticker}/analytics")
+    public Mono<ResponseEntity<AnalyticsDto>> analytics(@PathVariable String ticker) {
+        return Mono.fromCallable(() -> stocksPriceService.analytics(ticker.trim().toUpperCase())
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build()));
+    }
+}
@@ -0,0 +1,14 @@
+package daniel.nuud.stocksservice.dto;
+
+import daniel.nuud.stocksservice.alerts.RuleType;
+
+/**
+ * Тело POST /api/alerts/rules. windowMinutes обязателен только для MOVE_PERCENT.
+ */
+public record AlertRuleRequest(
+        String ticker,
+        RuleType type,
+        Double threshold,
+        Integer windowMinutes
+) {
+}
@@ -0,0 +1,18 @@
+package daniel.nuud.stocksservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * Скользящая аналитика тикера на момент последнего тика.
+ * volatility — EWMA-оценка стандартного отклонения лог-доходности между тиками.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record AnalyticsDto(
+        String ticker,
+        long timestamp,
+        Double volatility,
+        List<WindowStatsDto> windows
+) {
+}
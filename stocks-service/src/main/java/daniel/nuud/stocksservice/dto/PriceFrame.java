@@ -0,0 +1,8 @@
+package daniel.nuud.stocksservice.dto;
+
+/**
+ * Тик вместе с уже сериализованным JSON. Массив кодируется один раз и
+ * разделяется всеми WS-сессиями тикера, поэтому его нельзя изменять.
+ */
+public record PriceFrame(StockPriceDto price, byte[] json) {
+}
@@ -1,14 +1,22 @@
 package daniel.nuud.stocksservice.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import daniel.nuud.stocksservice.model.StockPrice;
 import lombok.Builder;
 
+/** analytics заполняется только в живых WS-кадрах; в снапшотах истории его нет. */
 @Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public record StockPriceDto(
         String ticker,
         Double price,
-        Long timestamp
+        Long timestamp,
+        AnalyticsDto analytics
 ) {
+    public StockPriceDto(String ticker, Double price, Long timestamp) {
+        this(ticker, price, timestamp, null);
+    }
+
     public static StockPriceDto from(StockPrice p) {
         return StockPriceDto.builder()
                 .ticker(p.getTicker())
@@ -16,4 +24,4 @@ public record StockPriceDto(
                 .timestamp(p.getTimestamp())
                 .build();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,12 @@
+package daniel.nuud.stocksservice.dto;
+
+import java.util.List;
+
+/**
+ * Входящее сообщение /ws/prices: {"action":"subscribe|unsubscribe|snapshot","tickers":["AAPL", ...]}.
+ */
+public record WatchCommand(
+        String action,
+        List<String> tickers
+) {
+}
@@ -0,0 +1,17 @@
+package daniel.nuud.stocksservice.dto;
+
+/**
+ * Агрегаты тикера за скользящее окно (1m, 5m, ...).
+ * high/low — экстремумы цены в окне, vwap — null, если в окне не было объёма.
+ */
+public record WindowStatsDto(
+        String window,
+        double open,
+        double high,
+        double low,
+        double close,
+        Double vwap,
+        double volume,
+        int ticks
+) {
+}
@@ -0,0 +1,128 @@
+package daniel.nuud.stocksservice.historical;
+
+import daniel.nuud.stocksservice.model.StockPrice;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Пересылка realtime-цен в historical-service пачками.
+ * За окно по каждому бару (тикер + начало) остаётся только последняя версия; бары разных минут
+ * не сливаются и уходят отдельными записями, иначе historical получил бы бар с чужим start и
+ * суммой объёмов нескольких минут. Окно закрывается по времени
+ * (stocks.historical.flush-ms) или по числу баров (stocks.historical.batch-size).
+ * Повторяются и возвращаются в очередь только 5xx и сетевые ошибки; пачка с 4xx отбрасывается,
+ * иначе она бы повторялась бесконечно.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class HistoricalClient {
+
+    private final WebClient historicalWebClient;
+
+    @Value("${stocks.historical.batch-size:500}")
+    private int batchSize;
+    @Value("${stocks.historical.max-in-flight:4}")
+    private int maxInFlight;
+    @Value("${stocks.historical.max-retries:3}")
+    private int maxRetries;
+
+    // (ticker, start) -> последняя ещё не отправленная версия бара
+    private final Map<BarKey, StockPrice> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public void offer(StockPrice price) {
+        pending.merge(BarKey.of(price), price, HistoricalClient::newer);
+        if (pending.size() >= batchSize) flush();
+    }
+
+    @Scheduled(fixedDelayString = "${stocks.historical.flush-ms:1000}")
+    public void flush() {
+        while (!pending.isEmpty()) {
+            if (!tryAcquire()) {
+                // тики продолжают схлопываться в pending до освобождения слота
+                log.debug("Historical forward deferred: {} requests in flight", inFlight.get());
+                return;
+            }
+            List<StockPrice> batch = drain();
+            if (batch.isEmpty()) {
+                inFlight.decrementAndGet();
+                return;
+            }
+            send(batch)
+                    .doFinally(sig -> inFlight.decrementAndGet())
+                    .subscribe();
+        }
+    }
+
+    private Mono<Void> send(List<StockPrice> batch) {
+        log.debug("Sending {} realtime prices to historical", batch.size());
+        return historicalWebClient.post()
+                .uri("/api/historical/realtime/batch")
+                .bodyValue(batch)
+                .retrieve()
+                .onStatus(HttpStatusCode::isError, res -> res.createException())
+                .toBodilessEntity()
+                .then()
+                .retryWhen(Retry.backoff(maxRetries, Duration.ofMillis(200))
+                        .filter(HistoricalClient::isTransient)
+                        .onRetryExhaustedThrow((spec, signal) -> signal.failure()))
+                .doOnError(e -> log.warn("Historical batch of {} failed: {}", batch.size(), e.getMessage()))
+                .onErrorResume(e -> {
+                    // вернём в очередь; если за это время пришла новая версия того же бара, остаётся она
+                    if (isTransient(e)) batch.forEach(p -> pending.merge(BarKey.of(p), p, HistoricalClient::newer));
+                    return Mono.empty();
+                });
+    }
+
+    /** 5xx или сбой соединения/ввода-вывода; 4xx повтором не исправить. */
+    private static boolean isTransient(Throwable e) {
+        if (e instanceof WebClientResponseException w) return w.getStatusCode().is5xxServerError();
+        return e instanceof WebClientRequestException || e instanceof IOException;
+    }
+
+    private List<StockPrice> drain() {
+        List<StockPrice> batch = new ArrayList<>(Math.min(batchSize, pending.size()));
+        for (Iterator<BarKey> it = pending.keySet().iterator(); it.hasNext() && batch.size() < batchSize; ) {
+            StockPrice p = pending.remove(it.next());
+            if (p != null) batch.add(p);
+        }
+        return batch;
+    }
+
+    private boolean tryAcquire() {
+        while (true) {
+            int n = inFlight.get();
+            if (n >= maxInFlight) return false;
+            if (inFlight.compareAndSet(n, n + 1)) return true;
+        }
+    }
+
+    private static StockPrice newer(StockPrice a, StockPrice b) {
+        return b.getTimestamp() >= a.getTimestamp() ? b : a;
+    }
+
+    private record BarKey(String ticker, long start) {
+        static BarKey of(StockPrice p) {
+            return new BarKey(p.getTicker(), p.getStart());
+        }
+    }
+}
@@ -11,5 +11,19 @@ public class StockPrice {
     private String ticker;
     private double price;
     private long timestamp;
+    // объём бара из агрегата Polygon; 0 — если неизвестен
+    private double volume;
+    // начало бара и его open/high/low; price — close, timestamp — конец бара
+    private long start;
+    private double open;
+    private double high;
+    private double low;
 
+    public StockPrice(String ticker, double price, long timestamp) {
+        this(ticker, price, timestamp, 0);
+    }
+
+    public StockPrice(String ticker, double price, long timestamp, double volume) {
+        this(ticker, price, timestamp, volume, timestamp, price, price, price);
+    }
 }
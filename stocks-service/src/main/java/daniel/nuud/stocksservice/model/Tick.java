@@ -0,0 +1,25 @@
+package daniel.nuud.stocksservice.model;
+
+/**
+ * Агрегат из Polygon внутри конвейера обработки: минутный бар целиком.
+ * start — начало бара (s), timestamp — его конец (e).
+ * volume, vwap (vw бара) и dayVwap равны NaN, если провайдер их не прислал;
+ * open/high/low без данных равны close.
+ */
+public record Tick(
+        String ticker,
+        double open,
+        double high,
+        double low,
+        double close,
+        long start,
+        long timestamp,
+        double volume,
+        double vwap,
+        double dayVwap
+) {
+    /** Тик с одной ценой (не бар): open = high = low = close, начало совпадает с концом. */
+    public Tick(String ticker, double close, long timestamp, double volume, double dayVwap) {
+        this(ticker, close, close, close, close, timestamp, timestamp, volume, Double.NaN, dayVwap);
+    }
+}
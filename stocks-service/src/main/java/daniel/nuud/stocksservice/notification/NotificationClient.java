@@ -1,13 +1,21 @@
 package daniel.nuud.stocksservice.notification;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
 
+import java.time.Duration;
 import java.time.Instant;
+import java.util.List;
 import java.util.Map;
 
 @Component
@@ -15,36 +23,104 @@ import java.util.Map;
 @Slf4j
 public class NotificationClient {
 
+    private static final Duration RESTART_DELAY = Duration.ofSeconds(1);
+
     private final WebClient notificationWebClient;
 
-    public Mono<Void> sendNotification(String userKey, String title, String message, String level,
-                                       String dedupeSuffix) {
+    @Value("${stocks.alerts.batch-size:200}")
+    private int batchSize;
+    @Value("${stocks.alerts.batch-window-ms:250}")
+    private long batchWindowMs;
+    @Value("${stocks.alerts.max-in-flight:2}")
+    private int maxInFlight;
+    @Value("${stocks.alerts.queue-capacity:10000}")
+    private int queueCapacity;
 
-        String dedupeKey = buildDedupeKey(userKey, dedupeSuffix);
+    // алерты копятся здесь и уходят пачками в POST /api/notifications/batch
+    private volatile Sinks.Many<Map<String, String>> queue;
+    private volatile Disposable batcher;
+    private volatile boolean stopped;
+    // продюсеры (полосы IngestPipeline) сериализуются явно, чтобы tryEmitNext не отвечал FAIL_NON_SERIALIZED
+    private final Object emitLock = new Object();
 
-        var body = Map.of(
-                "userKey", userKey,
-                "title", title,
-                "message", message,
-                "level", level,
-                "dedupeKey", dedupeKey
-        );
+    @PostConstruct
+    void start() {
+        batcher = pipeline();
+    }
+
+    @PreDestroy
+    void stop() {
+        stopped = true;
+        queue.tryEmitComplete();
+        if (batcher != null) batcher.dispose();
+    }
 
+    /**
+     * Очередь и отправка пачек. bufferTimeout с fairBackpressure не переполняется, когда все
+     * maxInFlight слотов заняты. Если конвейер всё же упал, он пересоздаётся с новой очередью:
+     * unicast-синк нельзя переподписать.
+     */
+    private Disposable pipeline() {
+        Sinks.Many<Map<String, String>> q = Sinks.many().unicast()
+                .onBackpressureBuffer(Queues.<Map<String, String>>get(queueCapacity).get());
+        queue = q;
+        return q.asFlux()
+                .bufferTimeout(batchSize, Duration.ofMillis(batchWindowMs), true)
+                .flatMap(this::sendBatch, maxInFlight)
+                .subscribe(null, e -> {
+                    log.error("Notification batcher failed, restarting: {}", e.toString(), e);
+                    if (!stopped) Mono.delay(RESTART_DELAY).subscribe(v -> restart());
+                });
+    }
+
+    private void restart() {
+        if (stopped) return;
+        synchronized (emitLock) {
+            batcher = pipeline();
+        }
+    }
+
+    /** Поставить алерт в очередь; уйдёт вместе с соседями по окну batch-window-ms / batch-size. */
+    public void enqueue(String userKey, String title, String message, String level, String dedupeSuffix) {
+        var body = body(userKey, title, message, level, dedupeSuffix);
+
+        Sinks.EmitResult result;
+        synchronized (emitLock) {
+            result = queue.tryEmitNext(body);
+        }
+        if (result.isFailure()) {
+            log.warn("Notification dropped for {}: {}", userKey, result);
+        }
+    }
+
+    private Mono<Void> sendBatch(List<Map<String, String>> batch) {
         return notificationWebClient.post()
-                .uri("/api/notifications")
-                .bodyValue(body)
+                .uri("/api/notifications/batch")
+                .bodyValue(batch)
                 .retrieve()
                 .onStatus(HttpStatusCode::isError, res ->
                         res.bodyToMono(String.class).defaultIfEmpty("")
                                 .map(b -> new RuntimeException(
-                                        "Notify failed: %s %s".formatted(res.statusCode(), b)))
+                                        "Notify batch failed: %s %s".formatted(res.statusCode(), b)))
                 )
                 .toBodilessEntity()
                 .then()
-                .doOnError(e -> log.warn("Notification post failed: {}", e.getMessage()))
+                .doOnSuccess(v -> log.debug("Notification batch of {} sent", batch.size()))
+                .doOnError(e -> log.warn("Notification batch of {} failed: {}", batch.size(), e.getMessage()))
                 .onErrorResume(e -> Mono.empty());
     }
 
+    private Map<String, String> body(String userKey, String title, String message, String level,
+                                     String dedupeSuffix) {
+        return Map.of(
+                "userKey", userKey,
+                "title", title,
+                "message", message,
+                "level", level,
+                "dedupeKey", buildDedupeKey(userKey, dedupeSuffix)
+        );
+    }
+
     private String buildDedupeKey(String userKey, String suffix) {
         long epochMinute = Instant.now().getEpochSecond() / 60;
         return userKey + ":" + suffix + ":" + epochMinute;
@@ -1,19 +1,20 @@
 package daniel.nuud.stocksservice.service;
 
+import daniel.nuud.stocksservice.dto.AnalyticsDto;
 import daniel.nuud.stocksservice.dto.StockPriceDto;
+import daniel.nuud.stocksservice.historical.HistoricalClient;
 import daniel.nuud.stocksservice.model.StockPrice;
+import daniel.nuud.stocksservice.model.Tick;
 import daniel.nuud.stocksservice.service.components.PricesHub;
+import daniel.nuud.stocksservice.service.components.RollingAnalytics;
+import daniel.nuud.stocksservice.service.components.TickRing;
 import jakarta.annotation.Nullable;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.http.HttpStatusCode;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
-import reactor.core.publisher.Mono;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedDeque;
 
 @Service
 @Slf4j
@@ -21,9 +22,11 @@ import java.util.concurrent.ConcurrentLinkedDeque;
 public class StocksPriceService {
 
     private final PricesHub pricesHub;
-    private final WebClient historicalWebClient;
+    private final HistoricalClient historicalClient;
+    private final RollingAnalytics rollingAnalytics;
 
-    private final Map<String, Deque<StockPrice>> priceMap = new ConcurrentHashMap<>();
+    // ticker -> последние тики; пишет только полоса IngestPipeline этого тикера
+    private final Map<String, TickRing> priceMap = new ConcurrentHashMap<>();
     private static final int MAX_ENTRIES = 100;
 
     public void save(String ticker, double price, long timestamp) {
@@ -31,20 +34,21 @@ public class StocksPriceService {
     }
 
     public void save(String ticker, double price, long timestamp, @Nullable String targetCurrency) {
-        priceMap.computeIfAbsent(ticker, t -> new ConcurrentLinkedDeque<>());
-        Deque<StockPrice> deque = priceMap.get(ticker);
+        save(new Tick(ticker, price, timestamp, Double.NaN, Double.NaN));
+    }
 
-        if (deque.size() >= MAX_ENTRIES) {
-            deque.pollFirst();
-        }
+    public void save(Tick tick) {
+        String ticker = tick.ticker();
+        double price = tick.close();
+        long timestamp = tick.timestamp();
+        priceMap.computeIfAbsent(ticker, t -> new TickRing(MAX_ENTRIES)).add(price, timestamp);
 
-        StockPrice stockPrice = new StockPrice(ticker, price, timestamp);
-        deque.addLast(stockPrice);
-        StockPriceDto dto = StockPriceDto.from(stockPrice);
+        StockPrice stockPrice = new StockPrice(ticker, price, timestamp, tick.volume() > 0 ? tick.volume() : 0,
+                tick.start(), tick.open(), tick.high(), tick.low());
+        // аналитика считается до отправки, чтобы кадр нёс уже обновлённые окна
+        StockPriceDto dto = new StockPriceDto(ticker, price, timestamp, rollingAnalytics.update(tick));
 
-        sendStockBar(stockPrice).doOnError(e -> log.warn("Historical post failed: {}", e.toString()))
-                .onErrorResume(e -> Mono.empty())
-                .subscribe();
+        historicalClient.offer(stockPrice);
 
         log.info("EMIT {}", stockPrice.getTicker());
         pricesHub.emit(stockPrice.getTicker(), dto);
@@ -54,22 +58,34 @@ public class StocksPriceService {
 //        }
     }
 
-    public Mono<Void> sendStockBar(StockPrice  stockPrice) {
-        log.info("Sending stock bar to historical: {}", stockPrice);
-        return historicalWebClient.post()
-                .uri("http://historical-service:8080/api/historical/realtime")
-                .bodyValue(stockPrice)
-                .retrieve()
-                .onStatus(HttpStatusCode::isError, res ->
-                res.bodyToMono(String.class).defaultIfEmpty("")
-                        .map(b -> new RuntimeException(
-                                "Historical post failed: %s %s"
-                                        .formatted(res.statusCode(), b)))
-                )
-                .toBodilessEntity()
-                .then()
-                .doOnError(e -> log.warn("Historical post failed: {}", e.getMessage()))
-                .onErrorResume(e -> Mono.empty());
+    /** Скользящая аналитика тикера на момент последнего тика. */
+    public Optional<AnalyticsDto> analytics(String ticker) {
+        return rollingAnalytics.snapshot(ticker);
+    }
+
+    /** Последняя известная цена тикера. */
+    public OptionalDouble latestPrice(String ticker) {
+        TickRing ring = priceMap.get(ticker);
+        if (ring == null) return OptionalDouble.empty();
+        double p = ring.latestPrice();
+        return Double.isNaN(p) ? OptionalDouble.empty() : OptionalDouble.of(p);
+    }
+
+    /** До n последних тиков тикера, от старых к новым (снапшот для новых WS-подписчиков). */
+    public List<StockPriceDto> recent(String ticker, int n) {
+        TickRing ring = priceMap.get(ticker);
+        if (ring == null || n <= 0) return List.of();
+
+        int size = Math.min(n, ring.capacity());
+        double[] prices = new double[size];
+        long[] timestamps = new long[size];
+        int count = ring.last(size, prices, timestamps);
+
+        List<StockPriceDto> out = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            out.add(new StockPriceDto(ticker, prices[i], timestamps[i]));
+        }
+        return out;
     }
 
 //    public void broadcastStockBar(StockPrice stockPrice, String targetCurrency) {
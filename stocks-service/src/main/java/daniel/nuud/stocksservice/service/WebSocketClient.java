@@ -1,12 +1,13 @@
 package daniel.nuud.stocksservice.service;
 
+import daniel.nuud.stocksservice.model.Tick;
+import daniel.nuud.stocksservice.service.components.ActiveSubscription;
 import daniel.nuud.stocksservice.service.components.ExponentialBackoff;
+import daniel.nuud.stocksservice.service.components.PolygonFrameParser;
 import daniel.nuud.stocksservice.service.components.PolygonMessageProcessor;
 import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.json.JSONArray;
-import org.json.JSONObject;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
@@ -23,12 +24,13 @@ import java.net.URI;
 import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
-public class WebSocketClient {
+public class WebSocketClient implements ActiveSubscription.Upstream {
 
     @Value("${polygon.ws.url}")
     private String wsUrl;
@@ -39,14 +41,23 @@ public class WebSocketClient {
     private final ExponentialBackoff backoff;
 
     private final ReactorNettyWebSocketClient reactiveClient = new ReactorNettyWebSocketClient();
-    private final Sinks.Many<String> outbound = Sinks.many().unicast().onBackpressureBuffer();
-    private final AtomicReference<String> currentTicker = new AtomicReference<>(null);
+    // исходящий канал живёт ровно одну WS-сессию: unicast-синк нельзя переподписать после реконнекта
+    private final AtomicReference<Sinks.Many<String>> outboundRef = new AtomicReference<>();
     private final AtomicReference<Disposable> connectionRef = new AtomicReference<>();
 
     @Value("${stocks.ws.mock:false}")
     private boolean mockMode;
+    @Value("${polygon.ws.subscribe-batch-ms:50}")
+    private long subscribeBatchMs;
 
+    // тикеры, на которые сейчас есть хотя бы один пользователь (0 -> 1 / 1 -> 0 из ActiveSubscription)
     private final Set<String> activeTickers = ConcurrentHashMap.newKeySet();
+    // тикеры, по которым уже отправлен subscribe в текущей сессии; очищается при её закрытии
+    private final Set<String> upstreamTickers = ConcurrentHashMap.newKeySet();
+    // изменённые, но ещё не отправленные тикеры; сбрасываются пачкой раз в subscribeBatchMs
+    private final Set<String> dirtyTickers = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
     private final Random rnd = new Random();
     private final Map<String, Double> last = new ConcurrentHashMap<>();
 
@@ -75,6 +86,16 @@ public class WebSocketClient {
         if (d != null) d.dispose();
     }
 
+    @Override
+    public void open(String ticker) {
+        subscribeTo(ticker);
+    }
+
+    @Override
+    public void close(String ticker) {
+        unsubscribe(ticker);
+    }
+
     public void subscribeTo(String ticker) {
         String t = Objects.requireNonNull(ticker).toUpperCase();
         if (mockMode) {
@@ -84,16 +105,10 @@ public class WebSocketClient {
         }
 
         ensureConnected();
-        String prev = currentTicker.getAndSet(t);
-        if (prev != null && !prev.equals(t)) {
-            String u = unsubJson(channel(prev));
-            outbound.tryEmitNext(u);
-            log.debug("Queue unsubscribe: {}", u);
+        if (activeTickers.add(t)) {
+            log.info("Subscribe requested for {}", t);
+            markDirty(t);
         }
-        String s = subJson(channel(t));
-        outbound.tryEmitNext(s);
-        log.info("Subscribe requested for {}", t);
-        log.debug("Queue subscribe: {}", s);
     }
 
     public void unsubscribe(String ticker) {
@@ -107,9 +122,61 @@ public class WebSocketClient {
             return;
         }
 
-        if (currentTicker.compareAndSet(t, null)) {
-            outbound.tryEmitNext(unsubJson(channel(t)));
+        if (activeTickers.remove(t)) {
+            log.info("Unsubscribe requested for {}", t);
+            markDirty(t);
+        }
+    }
+
+    /** Тикеры, которые сейчас должны стримиться из Polygon. */
+    public Set<String> subscribedTickers() {
+        return Collections.unmodifiableSet(activeTickers);
+    }
+
+    private void markDirty(String ticker) {
+        dirtyTickers.add(ticker);
+        if (flushScheduled.compareAndSet(false, true)) {
+            Mono.delay(Duration.ofMillis(subscribeBatchMs)).subscribe(v -> flushSubscriptions());
+        }
+    }
+
+    /** Отправляет накопленные изменения одним subscribe и одним unsubscribe с params через запятую. */
+    private synchronized void flushSubscriptions() {
+        flushScheduled.set(false);
+
+        List<String> toSubscribe = new ArrayList<>();
+        List<String> toUnsubscribe = new ArrayList<>();
+        for (Iterator<String> it = dirtyTickers.iterator(); it.hasNext(); ) {
+            String t = it.next();
+            it.remove();
+            boolean wanted = activeTickers.contains(t);
+            if (wanted && upstreamTickers.add(t)) toSubscribe.add(t);
+            else if (!wanted && upstreamTickers.remove(t)) toUnsubscribe.add(t);
+        }
+
+        if (!toUnsubscribe.isEmpty()) send(unsubJson(channels(toUnsubscribe)));
+        if (!toSubscribe.isEmpty()) send(subJson(channels(toSubscribe)));
+    }
+
+    /** После (повторной) аутентификации заново подписывает весь набор одним сообщением. */
+    private synchronized void replaySubscriptions() {
+        upstreamTickers.clear();
+        dirtyTickers.clear();
+        upstreamTickers.addAll(activeTickers);
+        if (upstreamTickers.isEmpty()) return;
+
+        log.info("Re-subscribing {} tickers after auth", upstreamTickers.size());
+        send(subJson(channels(upstreamTickers)));
+    }
+
+    private void send(String msg) {
+        Sinks.Many<String> outbound = outboundRef.get();
+        if (outbound == null) {
+            log.debug("WS OUT dropped (no session): {}", msg);
+            return;
         }
+        log.debug("WS OUT queue <- {}", msg);
+        outbound.tryEmitNext(msg);
     }
 
     private void open() {
@@ -126,9 +193,7 @@ public class WebSocketClient {
     }
 
     private Mono<Void> handleSession(WebSocketSession session) {
-        String auth = "{\"action\":\"auth\",\"params\":\"" + apiKey + "\"}";
-        outbound.tryEmitNext(auth);
-        log.debug("WS OUT queue <- {}", auth);
+        Sinks.Many<String> outbound = startSession();
 
         Mono<Void> send = session
                 .send(outbound.asFlux()
@@ -144,31 +209,54 @@ public class WebSocketClient {
                 .doOnNext(this::onText)
                 .then();
 
-        return Mono.when(send, recv);
+        return Mono.when(send, recv)
+                .doFinally(sig -> endSession(outbound));
+    }
+
+    /** Новый исходящий канал сессии; первым в нём уходит auth. */
+    Sinks.Many<String> startSession() {
+        Sinks.Many<String> outbound = Sinks.many().unicast().onBackpressureBuffer();
+        outboundRef.set(outbound);
+
+        String auth = "{\"action\":\"auth\",\"params\":\"" + apiKey + "\"}";
+        outbound.tryEmitNext(auth);
+        log.debug("WS OUT queue <- {}", auth);
+        return outbound;
+    }
+
+    /** Подписки умирают вместе с сокетом: новая сессия подпишет весь набор заново после auth_success. */
+    synchronized void endSession(Sinks.Many<String> outbound) {
+        if (outboundRef.compareAndSet(outbound, null)) upstreamTickers.clear();
     }
 
     private String abbreviate(String s) { return (s == null || s.length() <= 400) ? s : s.substring(0, 400) + "..."; }
 
-    private void onText(String text) {
+    void onText(String text) {
         try {
-            JSONArray arr = new JSONArray(text);
-            for (int i = 0; i < arr.length(); i++) {
-                JSONObject o = arr.getJSONObject(i);
-                if ("status".equals(o.optString("ev"))) {
-                    if ("authenticated".equalsIgnoreCase(o.optString("status"))) {
-                        backoff.reset();
-                        var t = currentTicker.get();
-                        if (t != null) outbound.tryEmitNext(subJson(channel(t)));
-                    }
-                    return;
-                }
-            }
-        } catch (Exception ignore) {
-
+            PolygonFrameParser.parse(text, upstreamListener);
+        } catch (Exception e) {
+            log.warn("WS frame skipped: {}", e.toString());
         }
-        messageProcessor.process(text);
     }
 
+    // статусы и агрегаты разбираются за один проход по фрейму
+    private final PolygonFrameParser.Listener upstreamListener = new PolygonFrameParser.Listener() {
+        @Override
+        public void onAggregate(Tick tick) {
+            messageProcessor.onAggregate(tick);
+        }
+
+        @Override
+        public void onStatus(String status, String message) {
+            messageProcessor.onStatus(status, message);
+            // status — код (auth_success), "authenticated" приходит только текстом в message
+            if ("auth_success".equalsIgnoreCase(status)) {
+                backoff.reset();
+                replaySubscriptions();
+            }
+        }
+    };
+
     private void scheduleReconnect() {
         if (mockMode) return;
         long delay = backoff.nextDelayMs();
@@ -196,7 +284,12 @@ public class WebSocketClient {
             sb.append('{')
                     .append("\"ev\":\"A\",")
                     .append("\"sym\":\"").append(t).append("\",")
+                    .append("\"o\":").append(String.format(Locale.US, "%.2f", prev)).append(',')
+                    .append("\"h\":").append(String.format(Locale.US, "%.2f", Math.max(prev, next))).append(',')
+                    .append("\"l\":").append(String.format(Locale.US, "%.2f", Math.min(prev, next))).append(',')
                     .append("\"c\":").append(String.format(Locale.US, "%.2f", next)).append(',')
+                    .append("\"vw\":").append(String.format(Locale.US, "%.4f", (prev + next) / 2)).append(',')
+                    .append("\"v\":").append(1_000 + rnd.nextInt(9_000)).append(',')
                     .append("\"s\":").append(now - 60_000).append(',')
                     .append("\"e\":").append(now)
                     .append('}');
@@ -213,6 +306,11 @@ public class WebSocketClient {
     }
 
     private String channel(String ticker) { return "AM." + ticker.toUpperCase(); }
+    private String channels(Collection<String> tickers) {
+        StringJoiner joiner = new StringJoiner(",");
+        for (String t : tickers) joiner.add(channel(t));
+        return joiner.toString();
+    }
     private String subJson(String ch)   { return "{\"action\":\"subscribe\",\"params\":\"" + ch + "\"}"; }
     private String unsubJson(String ch) { return "{\"action\":\"unsubscribe\",\"params\":\"" + ch + "\"}"; }
 }
@@ -1,80 +1,172 @@
 package daniel.nuud.stocksservice.service.components;
 
+import jakarta.annotation.Nullable;
 import org.springframework.stereotype.Component;
 
-import java.util.Optional;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 @Component
 public class ActiveSubscription {
 
     // Текущий активный тикер каждого пользователя
     private final ConcurrentHashMap<String, String> currentByUser = new ConcurrentHashMap<>();
-    // Счётчик активных пользователей на каждом тикере (для first/last)
-    private final ConcurrentHashMap<String, AtomicInteger> countByTicker = new ConcurrentHashMap<>();
+    // Обратный индекс: тикер -> пользователи и WS-сессии; число подписчиков считается по нему же
+    private final ConcurrentHashMap<String, Refs> refsByTicker = new ConcurrentHashMap<>();
+    // Вотчлист каждой WS-сессии (для очистки при закрытии)
+    private final ConcurrentHashMap<String, Set<String>> tickersBySession = new ConcurrentHashMap<>();
 
-    /** Оформить/переключить подписку пользователя на тикер.
-     *  @return true — если для этого тикера это первый активный пользователь (0 -> 1). */
-    public boolean subscribe(String userKey, String rawTicker) {
+    // Операции одного пользователя/сессии сериализуются по страйпу, чтобы
+    // currentByUser и refsByTicker не расходились при параллельных переключениях
+    private static final int STRIPES = 64;
+    private final Object[] locks = new Object[STRIPES];
+
+    public ActiveSubscription() {
+        for (int i = 0; i < STRIPES; i++) locks[i] = new Object();
+    }
+
+    /** Подписчики одного тикера. Меняется только внутри refsByTicker.compute. */
+    private static final class Refs {
+        final Set<String> users = ConcurrentHashMap.newKeySet();
+        final Set<String> sessions = ConcurrentHashMap.newKeySet();
+
+        int total() { return users.size() + sessions.size(); }
+    }
+
+    /**
+     * Включение/выключение стрима тикера у провайдера. Вызывается под блокировкой тикера
+     * в том же compute, который решил переход 0 -> 1 / 1 -> 0, поэтому open и close
+     * одного тикера не переставляются при параллельных подписках разных пользователей.
+     */
+    public interface Upstream {
+        void open(String ticker);
+
+        void close(String ticker);
+    }
+
+    /** Результат подписки: first — у тикера появился первый пользователь (0 -> 1);
+     *  released — прежний тикер пользователя, у которого не осталось подписчиков (1 -> 0), иначе null. */
+    public record Change(boolean first, @Nullable String released) {}
+
+    /** Оформить/переключить подписку пользователя на тикер. */
+    public Change subscribe(String userKey, String rawTicker, Upstream upstream) {
         final String user = normUser(userKey);
         final String ticker = norm(rawTicker);
 
-        String previous = currentByUser.put(user, ticker);
-        if (previous != null && !previous.equals(ticker)) {
-            dec(previous);
+        synchronized (lockFor(user)) {
+            String previous = currentByUser.put(user, ticker);
+            if (ticker.equals(previous)) {
+                return new Change(false, null);
+            }
+            String released = (previous != null && remove(previous, r -> r.users, user, upstream)) ? previous : null;
+            return new Change(add(ticker, r -> r.users, user, upstream), released);
         }
-        return inc(ticker) == 1;
     }
 
     /** Отписать пользователя от тикера.
      *  @return true — если это был последний активный пользователь этого тикера (1 -> 0). */
-    public boolean unsubscribe(String userKey, String rawTicker) {
+    public boolean unsubscribe(String userKey, String rawTicker, Upstream upstream) {
         final String user = normUser(userKey);
         final String ticker = norm(rawTicker);
 
-        currentByUser.compute(user, (k, v) -> (v != null && v.equals(ticker)) ? null : v);
-        return dec(ticker) == 0;
-    }
-
-    /** Активный тикер для конкретного пользователя (использует WS-хендлер). */
-    public Optional<String> tickerFor(String userKey) {
-        return Optional.ofNullable(currentByUser.get(normUser(userKey)));
+        synchronized (lockFor(user)) {
+            // пользователь не на этом тикере — счётчики не трогаем
+            if (!currentByUser.remove(user, ticker)) return false;
+            return remove(ticker, r -> r.users, user, upstream);
+        }
     }
 
-    /** Сколько сейчас активных пользователей у тикера (по REST удобно для логов). */
+    /** Сколько сейчас подписчиков у тикера (пользователи + WS-сессии). */
     public int subscribers(String rawTicker) {
-        AtomicInteger c = countByTicker.get(norm(rawTicker));
-        return c == null ? 0 : c.get();
+        Refs r = refsByTicker.get(norm(rawTicker));
+        return r == null ? 0 : r.total();
     }
 
-    /** Текущие пользователи, подписанные на тикер (если вдруг понадобится). */
+    /** Текущие пользователи, подписанные на тикер. O(1), без обхода всех пользователей. */
     public Set<String> usersOf(String rawTicker) {
-        // Лёгкая выборка через currentByUser (O(n)); при желании можно хранить обратную мапу.
-        final String t = norm(rawTicker);
-        return currentByUser.entrySet().stream()
-                .filter(e -> t.equals(e.getValue()))
-                .map(java.util.Map.Entry::getKey)
-                .collect(java.util.stream.Collectors.toSet());
+        Refs r = refsByTicker.get(norm(rawTicker));
+        return r == null ? Set.of() : Collections.unmodifiableSet(r.users);
     }
 
-    // --- helpers ---
+    /** Добавить тикер в вотчлист WS-сессии.
+     *  @return true — если для этого тикера это первый подписчик (0 -> 1). */
+    public boolean watch(String sessionId, String rawTicker, Upstream upstream) {
+        final String ticker = norm(rawTicker);
+
+        synchronized (lockFor(sessionId)) {
+            Set<String> mine = tickersBySession.computeIfAbsent(sessionId, k -> ConcurrentHashMap.newKeySet());
+            if (!mine.add(ticker)) return false;
+            return add(ticker, r -> r.sessions, sessionId, upstream);
+        }
+    }
+
+    /** Убрать тикер из вотчлиста WS-сессии.
+     *  @return true — если это был последний подписчик тикера (1 -> 0). */
+    public boolean unwatch(String sessionId, String rawTicker, Upstream upstream) {
+        final String ticker = norm(rawTicker);
 
-    private int inc(String ticker) {
-        return countByTicker.computeIfAbsent(ticker, k -> new AtomicInteger(0)).incrementAndGet();
+        synchronized (lockFor(sessionId)) {
+            Set<String> mine = tickersBySession.get(sessionId);
+            if (mine == null || !mine.remove(ticker)) return false;
+            return remove(ticker, r -> r.sessions, sessionId, upstream);
+        }
     }
 
-    private int dec(String ticker) {
-        AtomicInteger c = countByTicker.get(ticker);
-        if (c == null) return 0;
-        int val = c.decrementAndGet();
-        if (val <= 0) {
-            countByTicker.remove(ticker, c);
-            return 0;
+    /** Снять весь вотчлист закрытой сессии. @return тикеры, у которых не осталось подписчиков. */
+    public List<String> releaseSession(String sessionId, Upstream upstream) {
+        synchronized (lockFor(sessionId)) {
+            Set<String> mine = tickersBySession.remove(sessionId);
+            if (mine == null) return List.of();
+
+            List<String> released = new ArrayList<>();
+            for (String ticker : mine) {
+                if (remove(ticker, r -> r.sessions, sessionId, upstream)) released.add(ticker);
+            }
+            return released;
         }
-        return val;
+    }
+
+    /** WS-сессии, у которых тикер в вотчлисте. */
+    public Set<String> sessionsOf(String rawTicker) {
+        Refs r = refsByTicker.get(norm(rawTicker));
+        return r == null ? Set.of() : Collections.unmodifiableSet(r.sessions);
+    }
+
+    // --- helpers ---
+
+    /** @return true — если тикер получил первого подписчика (0 -> 1). */
+    private boolean add(String ticker, Function<Refs, Set<String>> side, String key, Upstream upstream) {
+        boolean[] first = {false};
+        refsByTicker.compute(ticker, (k, r) -> {
+            if (r == null) r = new Refs();
+            if (side.apply(r).add(key) && r.total() == 1) {
+                first[0] = true;
+                upstream.open(k);
+            }
+            return r;
+        });
+        return first[0];
+    }
+
+    /** @return true — если у тикера не осталось подписчиков (1 -> 0). */
+    private boolean remove(String ticker, Function<Refs, Set<String>> side, String key, Upstream upstream) {
+        boolean[] last = {false};
+        refsByTicker.computeIfPresent(ticker, (k, r) -> {
+            if (!side.apply(r).remove(key)) return r;
+            if (r.total() > 0) return r;
+            last[0] = true;
+            upstream.close(k);
+            return null;
+        });
+        return last[0];
+    }
+
+    private Object lockFor(String key) {
+        return locks[(key.hashCode() & 0x7fffffff) % STRIPES];
     }
 
     private String norm(String t) { return t == null ? "" : t.trim().toUpperCase(); }
@@ -0,0 +1,120 @@
+package daniel.nuud.stocksservice.service.components;
+
+import daniel.nuud.stocksservice.dto.PriceFrame;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Исходящая очередь одной WS-сессии с конфляцией.
+ * Пока клиент успевает читать, кадры уходят сразу и по порядку. Если сокет отстаёт,
+ * на каждый тикер хранится только последний неотправленный кадр, промежуточные выбрасываются.
+ * Память на сессию ограничена числом тикеров, а не скоростью клиента.
+ * Снапшоты истории (offerSnapshot) внутри себя не конфлатируются и уходят раньше живых кадров,
+ * чтобы история тикера не схлопнулась в одну точку. На тикер ждёт не больше одного снапшота:
+ * повторный заменяет ещё не начатый, так что очередь снапшотов тоже ограничена числом тикеров.
+ */
+public final class ConflatingMailbox {
+
+    // ticker -> последний неотправленный кадр
+    private final Map<String, PriceFrame> latest = new ConcurrentHashMap<>();
+    // порядок отправки тикеров; каждый тикер здесь не больше одного раза
+    private final Queue<String> order = new ConcurrentLinkedQueue<>();
+    // ticker -> ожидающий снапшот; порядок тикеров — как у живых кадров
+    private final Map<String, List<PriceFrame>> snapshots = new ConcurrentHashMap<>();
+    private final Queue<String> snapshotOrder = new ConcurrentLinkedQueue<>();
+    // снапшот, который сейчас отправляется; трогается только внутри drain
+    private Iterator<PriceFrame> sending;
+
+    private final AtomicInteger wip = new AtomicInteger();
+    private final AtomicLong conflated = new AtomicLong();
+    // с какого момента есть неотправленные кадры (0 — клиент не отстаёт)
+    private volatile long stalledSinceNanos;
+    private volatile FluxSink<PriceFrame> sink;
+
+    public Flux<PriceFrame> flux() {
+        return Flux.create(s -> {
+            sink = s;
+            s.onRequest(n -> drain());
+            drain();
+        });
+    }
+
+    public void offer(PriceFrame frame) {
+        String ticker = frame.price().ticker();
+        if (latest.put(ticker, frame) != null) {
+            conflated.incrementAndGet();
+        } else {
+            order.offer(ticker);
+        }
+        drain();
+    }
+
+    /** Поставить кадры истории тикера целиком, заменив его ещё не начатый снапшот. */
+    public void offerSnapshot(String ticker, List<PriceFrame> frames) {
+        if (frames.isEmpty()) return;
+        List<PriceFrame> replaced = snapshots.put(ticker, List.copyOf(frames));
+        if (replaced != null) {
+            conflated.addAndGet(replaced.size());
+        } else {
+            snapshotOrder.offer(ticker);
+        }
+        drain();
+    }
+
+    /** Сколько кадров было заменено более свежими до отправки. */
+    public long conflatedCount() {
+        return conflated.get();
+    }
+
+    /** Как долго у клиента копятся неотправленные кадры, мс. */
+    public long lagMillis() {
+        long since = stalledSinceNanos;
+        return since == 0 ? 0 : (System.nanoTime() - since) / 1_000_000;
+    }
+
+    private void drain() {
+        if (wip.getAndIncrement() != 0) return;
+
+        int missed = 1;
+        do {
+            FluxSink<PriceFrame> s = sink;
+            if (s != null) {
+                while (s.requestedFromDownstream() > 0 && !s.isCancelled()) {
+                    if (sending == null || !sending.hasNext()) sending = nextSnapshot();
+                    if (sending != null) {
+                        s.next(sending.next());
+                        continue;
+                    }
+                    String ticker = order.poll();
+                    if (ticker == null) break;
+                    PriceFrame f = latest.remove(ticker);
+                    if (f != null) s.next(f);
+                }
+            }
+
+            boolean idle = order.isEmpty() && snapshotOrder.isEmpty() && (sending == null || !sending.hasNext());
+            if (idle) stalledSinceNanos = 0;
+            else if (stalledSinceNanos == 0) stalledSinceNanos = System.nanoTime();
+
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private Iterator<PriceFrame> nextSnapshot() {
+        String ticker;
+        while ((ticker = snapshotOrder.poll()) != null) {
+            List<PriceFrame> frames = snapshots.remove(ticker);
+            if (frames != null) return frames.iterator();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,126 @@
+package daniel.nuud.stocksservice.service.components;
+
+import daniel.nuud.stocksservice.model.Tick;
+import daniel.nuud.stocksservice.service.StocksPriceService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.concurrent.Queues;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Развязывает поток приёма WS и обработку тиков.
+ * Тик попадает в одну из N полос по хэшу тикера: внутри полосы обработка однопоточная,
+ * поэтому порядок по тикеру сохраняется, а разные тикеры обрабатываются параллельно.
+ * Очередь каждой полосы ограничена; при переполнении тик отбрасывается и учитывается в метриках.
+ * publishOn забирает из очереди лишь небольшой prefetch, чтобы почти весь бэклог оставался
+ * в самой очереди полосы: иначе ёмкость тихо растёт на 256 тиков, а drop срабатывает позже.
+ * После сохранения цены тик получают все TickListener (алерты и т.п.).
+ */
+@Slf4j
+@Component
+public class IngestPipeline {
+
+    private final StocksPriceService stocksPriceService;
+    private final List<TickListener> listeners;
+
+    private final List<Sinks.Many<Tick>> lanes = new ArrayList<>();
+    private final List<AtomicInteger> depth = new ArrayList<>();
+    private final List<Disposable> workers = new ArrayList<>();
+    private final Scheduler scheduler;
+
+    private final Counter dropped;
+    private final Counter processed;
+
+    public IngestPipeline(StocksPriceService stocksPriceService,
+                          List<TickListener> listeners,
+                          MeterRegistry registry,
+                          @Value("${stocks.ingest.lanes:0}") int laneCount,
+                          @Value("${stocks.ingest.lane-capacity:1024}") int laneCapacity,
+                          @Value("${stocks.ingest.prefetch:8}") int prefetch) {
+        this.stocksPriceService = stocksPriceService;
+        this.listeners = List.copyOf(listeners);
+
+        int n = laneCount > 0 ? laneCount : Runtime.getRuntime().availableProcessors();
+        this.scheduler = Schedulers.newParallel("ingest-lane", n);
+
+        this.dropped = Counter.builder("stocks.ingest.dropped")
+                .description("Ticks dropped because the lane queue was full")
+                .register(registry);
+        this.processed = Counter.builder("stocks.ingest.processed")
+                .description("Ticks processed by ingest lanes")
+                .register(registry);
+
+        for (int i = 0; i < n; i++) {
+            Sinks.Many<Tick> sink = Sinks.many().unicast()
+                    .onBackpressureBuffer(Queues.<Tick>get(laneCapacity).get());
+            AtomicInteger laneDepth = new AtomicInteger();
+
+            Gauge.builder("stocks.ingest.queue.depth", laneDepth, AtomicInteger::get)
+                    .description("Ticks waiting in the ingest lane")
+                    .tag("lane", String.valueOf(i))
+                    .register(registry);
+
+            workers.add(sink.asFlux()
+                    .publishOn(scheduler, prefetch)
+                    .subscribe(t -> {
+                        laneDepth.decrementAndGet();
+                        handle(t);
+                    }));
+            lanes.add(sink);
+            depth.add(laneDepth);
+        }
+        log.info("Ingest pipeline started: {} lanes x {} ticks, {} listeners", n, laneCapacity, this.listeners.size());
+    }
+
+    /** Поставить тик в полосу его тикера. Не блокирует поток приёма. */
+    public void submit(Tick tick) {
+        String ticker = tick.ticker();
+        int lane = (ticker.hashCode() & 0x7fffffff) % lanes.size();
+        AtomicInteger laneDepth = depth.get(lane);
+
+        laneDepth.incrementAndGet();
+        Sinks.EmitResult result = lanes.get(lane).tryEmitNext(tick);
+        if (result.isFailure()) {
+            laneDepth.decrementAndGet();
+            dropped.increment();
+            log.debug("Ingest lane {} rejected {} ({})", lane, ticker, result);
+        }
+    }
+
+    private void handle(Tick tick) {
+        try {
+            stocksPriceService.save(tick);
+        } catch (Exception e) {
+            log.warn("Ingest failed for {}: {}", tick.ticker(), e.toString());
+            return;
+        }
+        // сбой одного слушателя не должен лишать тика остальных
+        for (TickListener listener : listeners) {
+            try {
+                listener.onTick(tick);
+            } catch (Exception e) {
+                log.warn("{} failed on {}: {}", listener.getClass().getSimpleName(), tick.ticker(), e.toString());
+            }
+        }
+        processed.increment();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        lanes.forEach(Sinks.Many::tryEmitComplete);
+        workers.forEach(Disposable::dispose);
+        scheduler.dispose();
+    }
+}
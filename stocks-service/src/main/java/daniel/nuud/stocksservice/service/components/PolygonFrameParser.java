@@ -0,0 +1,331 @@
+package daniel.nuud.stocksservice.service.components;
+
+import daniel.nuud.stocksservice.model.Tick;
+
+/**
+ * Однопроходный разбор фреймов Polygon WS без построения DOM.
+ * Читает только ev/sym/o/h/l/c/v/vw/a/s/e (агрегаты) и status/message (статусы), остальные поля пропускает.
+ * Строка создаётся только для тикера и для полей статуса.
+ */
+public final class PolygonFrameParser {
+
+    public interface Listener {
+        /** Бар агрегата. Без s начало бара считается как e - 1; остальные пропуски — см. {@link Tick}. */
+        void onAggregate(Tick tick);
+
+        void onStatus(String status, String message);
+    }
+
+    private static final int EV_OTHER = 0;
+    private static final int EV_AGGREGATE = 1;
+    private static final int EV_STATUS = 2;
+
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final CharSequence s;
+    private final int len;
+    private int pos;
+
+    private PolygonFrameParser(CharSequence s) {
+        this.s = s;
+        this.len = s.length();
+    }
+
+    /** Разобрать фрейм (массив событий или одиночное событие) и отдать события в listener. */
+    public static void parse(CharSequence frame, Listener listener) {
+        new PolygonFrameParser(frame).frame(listener);
+    }
+
+    private void frame(Listener listener) {
+        skipWs();
+        if (pos >= len) return;
+
+        if (peek() != '[') {
+            event(listener);
+            return;
+        }
+
+        pos++;
+        skipWs();
+        if (peek() == ']') {
+            pos++;
+            return;
+        }
+        while (true) {
+            skipWs();
+            if (peek() == '{') event(listener);
+            else skipValue();
+            skipWs();
+            char c = next();
+            if (c == ']') return;
+            if (c != ',') throw malformed();
+        }
+    }
+
+    private void event(Listener listener) {
+        expect('{');
+
+        int ev = EV_OTHER;
+        int symStart = -1, symEnd = -1;
+        int statusStart = -1, statusEnd = -1;
+        int messageStart = -1, messageEnd = -1;
+        double open = Double.NaN, high = Double.NaN, low = Double.NaN, close = 0;
+        long start = 0, end = 0;
+        double volume = Double.NaN;
+        double vwap = Double.NaN;
+        double dayVwap = Double.NaN;
+        boolean hasClose = false, hasStart = false, hasEnd = false;
+
+        skipWs();
+        if (peek() == '}') {
+            pos++;
+            return;
+        }
+
+        while (true) {
+            skipWs();
+            int keyStart = pos + 1;
+            int keyEnd = string();
+            skipWs();
+            expect(':');
+            skipWs();
+
+            if (keyEquals(keyStart, keyEnd, "ev")) {
+                int evStart = pos + 1;
+                ev = classify(evStart, string());
+            } else if (keyEquals(keyStart, keyEnd, "sym")) {
+                symStart = pos + 1;
+                symEnd = string();
+            } else if (keyEquals(keyStart, keyEnd, "c")) {
+                close = decimal();
+                hasClose = true;
+            } else if (keyEquals(keyStart, keyEnd, "o")) {
+                open = decimal();
+            } else if (keyEquals(keyStart, keyEnd, "h")) {
+                high = decimal();
+            } else if (keyEquals(keyStart, keyEnd, "l")) {
+                low = decimal();
+            } else if (keyEquals(keyStart, keyEnd, "vw")) {
+                vwap = decimal();
+            } else if (keyEquals(keyStart, keyEnd, "s")) {
+                start = integer();
+                hasStart = true;
+            } else if (keyEquals(keyStart, keyEnd, "e")) {
+                end = integer();
+                hasEnd = true;
+            } else if (keyEquals(keyStart, keyEnd, "v")) {
+                volume = decimal();
+            } else if (keyEquals(keyStart, keyEnd, "a")) {
+                dayVwap = decimal();
+            } else if (keyEquals(keyStart, keyEnd, "status")) {
+                statusStart = pos + 1;
+                statusEnd = string();
+            } else if (keyEquals(keyStart, keyEnd, "message")) {
+                messageStart = pos + 1;
+                messageEnd = string();
+            } else {
+                skipValue();
+            }
+
+            skipWs();
+            char c = next();
+            if (c == '}') break;
+            if (c != ',') throw malformed();
+        }
+
+        if (ev == EV_AGGREGATE && symStart >= 0 && hasClose && hasEnd) {
+            listener.onAggregate(new Tick(text(symStart, symEnd),
+                    Double.isNaN(open) ? close : open,
+                    Double.isNaN(high) ? close : high,
+                    Double.isNaN(low) ? close : low,
+                    close, hasStart ? start : end - 1, end, volume, vwap, dayVwap));
+        } else if (ev == EV_STATUS) {
+            listener.onStatus(text(statusStart, statusEnd), text(messageStart, messageEnd));
+        }
+    }
+
+    // --- tokens ---
+
+    /** Пропускает строку в кавычках; pos остаётся за закрывающей кавычкой. @return индекс закрывающей кавычки */
+    private int string() {
+        expect('"');
+        while (pos < len) {
+            char c = s.charAt(pos++);
+            if (c == '"') return pos - 1;
+            if (c == '\\') pos++;
+        }
+        throw malformed();
+    }
+
+    private double decimal() {
+        int start = pos;
+        if (peek() == '-') pos++;
+
+        long mantissa = 0;
+        int digits = 0;
+        int fraction = 0;
+        boolean dot = false;
+        boolean fast = true;
+
+        while (pos < len) {
+            char c = s.charAt(pos);
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (dot) fraction++;
+            } else if (c == '.' && !dot) {
+                dot = true;
+            } else if (c == 'e' || c == 'E' || c == '+' || c == '-') {
+                fast = false;
+            } else {
+                break;
+            }
+            pos++;
+        }
+        if (digits == 0) throw malformed();
+
+        // до 15 значащих цифр мантисса и 10^k точны в double, деление даёт корректное округление
+        if (fast && digits <= 15 && fraction < POW10.length) {
+            double v = mantissa / POW10[fraction];
+            return s.charAt(start) == '-' ? -v : v;
+        }
+        return Double.parseDouble(s.subSequence(start, pos).toString());
+    }
+
+    private long integer() {
+        int start = pos;
+        boolean negative = peek() == '-';
+        if (negative) pos++;
+
+        long v = 0;
+        int digits = 0;
+        while (pos < len) {
+            char c = s.charAt(pos);
+            if (c < '0' || c > '9') break;
+            v = v * 10 + (c - '0');
+            digits++;
+            pos++;
+        }
+        if (digits == 0) throw malformed();
+
+        if ((pos < len && isNumberTail(s.charAt(pos))) || digits > 18) {
+            pos = start;
+            return (long) decimal();
+        }
+        return negative ? -v : v;
+    }
+
+    private void skipValue() {
+        char c = peek();
+        if (c == '"') {
+            string();
+        } else if (c == '{' || c == '[') {
+            int depth = 0;
+            while (pos < len) {
+                char ch = s.charAt(pos);
+                if (ch == '"') {
+                    string();
+                    continue;
+                }
+                pos++;
+                if (ch == '{' || ch == '[') depth++;
+                else if (ch == '}' || ch == ']') {
+                    if (--depth == 0) return;
+                }
+            }
+            throw malformed();
+        } else {
+            // число или литерал true/false/null
+            while (pos < len) {
+                char ch = s.charAt(pos);
+                if (ch == ',' || ch == '}' || ch == ']' || isWs(ch)) break;
+                pos++;
+            }
+        }
+    }
+
+    // --- helpers ---
+
+    private int classify(int start, int end) {
+        int n = end - start;
+        if (n == 1 && s.charAt(start) == 'A') return EV_AGGREGATE;
+        if (n == 2 && s.charAt(start) == 'A' && s.charAt(start + 1) == 'M') return EV_AGGREGATE;
+        if (keyEquals(start, end, "status")) return EV_STATUS;
+        return EV_OTHER;
+    }
+
+    private boolean keyEquals(int start, int end, String key) {
+        if (end - start != key.length()) return false;
+        for (int i = 0; i < key.length(); i++) {
+            if (s.charAt(start + i) != key.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private String text(int start, int end) {
+        if (start < 0) return "";
+        for (int i = start; i < end; i++) {
+            if (s.charAt(i) == '\\') return unescape(start, end);
+        }
+        return s.subSequence(start, end).toString();
+    }
+
+    private String unescape(int start, int end) {
+        StringBuilder sb = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c != '\\' || i + 1 >= end) {
+                sb.append(c);
+                continue;
+            }
+            char e = s.charAt(++i);
+            switch (e) {
+                case 'n' -> sb.append('\n');
+                case 't' -> sb.append('\t');
+                case 'r' -> sb.append('\r');
+                case 'b' -> sb.append('\b');
+                case 'f' -> sb.append('\f');
+                case 'u' -> {
+                    if (i + 4 >= end) throw malformed();
+                    sb.append((char) Integer.parseInt(s.subSequence(i + 1, i + 5).toString(), 16));
+                    i += 4;
+                }
+                default -> sb.append(e);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean isNumberTail(char c) {
+        return c == '.' || c == 'e' || c == 'E';
+    }
+
+    private static boolean isWs(char c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    private void skipWs() {
+        while (pos < len && isWs(s.charAt(pos))) pos++;
+    }
+
+    private char peek() {
+        if (pos >= len) throw malformed();
+        return s.charAt(pos);
+    }
+
+    private char next() {
+        if (pos >= len) throw malformed();
+        return s.charAt(pos++);
+    }
+
+    private void expect(char c) {
+        if (next() != c) throw malformed();
+    }
+
+    private IllegalArgumentException malformed() {
+        return new IllegalArgumentException("Malformed Polygon frame at " + pos);
+    }
+}
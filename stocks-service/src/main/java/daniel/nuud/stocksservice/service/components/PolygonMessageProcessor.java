@@ -1,42 +1,28 @@
 package daniel.nuud.stocksservice.service.components;
 
-import daniel.nuud.stocksservice.model.StockPrice;
-import daniel.nuud.stocksservice.service.StocksPriceService;
+import daniel.nuud.stocksservice.model.Tick;
 import lombok.RequiredArgsConstructor;
-import org.json.JSONArray;
-import org.json.JSONObject;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
+@Slf4j
 @Component
 @RequiredArgsConstructor
-public class PolygonMessageProcessor {
-    private final StocksPriceService stockPriceService;
-    private final TenPercentMoveEngine tenPercentMoveEngine;
+public class PolygonMessageProcessor implements PolygonFrameParser.Listener {
+    private final IngestPipeline ingestPipeline;
 
-    public void process(String text) {
-
-        JSONArray arr = new JSONArray(text);
-
-        for (int i = 0; i < arr.length(); i++) {
-
-            JSONObject json = arr.getJSONObject(i);
-            String ev = json.optString("ev", "");
-
-            if ("A".equals(ev) || "AM".equals(ev)) {
-
-                String ticker = json.getString("sym");
-                double close = json.getDouble("c");
-                long ts = json.getLong("e");
-
-                stockPriceService.save(ticker, close, ts);
-
-                tenPercentMoveEngine.onPrice(new StockPrice(ticker, close, ts)).subscribe();
+    public void process(CharSequence text) {
+        PolygonFrameParser.parse(text, this);
+    }
 
-            } else if ("status".equals(ev)) {
+    @Override
+    public void onAggregate(Tick tick) {
+        // сохранение и алерты выполняются в полосе тикера, а не в потоке приёма WS
+        ingestPipeline.submit(tick);
+    }
 
-                System.out.println("Status: " + json.optString("status")
-                        + " | Message: " + json.optString("message"));
-            }
-        }
+    @Override
+    public void onStatus(String status, String message) {
+        log.info("Status: {} | Message: {}", status, message);
     }
 }
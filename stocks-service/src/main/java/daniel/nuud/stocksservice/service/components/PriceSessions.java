@@ -0,0 +1,191 @@
+package daniel.nuud.stocksservice.service.components;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import daniel.nuud.stocksservice.dto.PriceFrame;
+import daniel.nuud.stocksservice.dto.WatchCommand;
+import daniel.nuud.stocksservice.service.StocksPriceService;
+import daniel.nuud.stocksservice.service.WebSocketClient;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.socket.CloseStatus;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Обработчик /ws/prices. Одна сессия держит целый вотчлист тикеров; клиент управляет им
+ * сообщениями WatchCommand (subscribe / unsubscribe / snapshot) прямо по сокету.
+ * Первый и последний подписчик тикера включают и выключают стрим из Polygon.
+ */
+@Slf4j
+@Component
+public class PriceSessions {
+
+    private final PricesHub hub;
+    private final StocksPriceService priceService;
+    private final ActiveSubscription active;
+    private final WebSocketClient polygonClient;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final DistributionSummary lagSummary;
+    private final DistributionSummary conflatedSummary;
+    private final Counter slowConsumers;
+
+    @Value("${stocks.ws.snapshot-size:50}")
+    private int snapshotSize;
+    @Value("${stocks.ws.max-lag-ms:30000}")
+    private long maxLagMs;
+
+    public PriceSessions(PricesHub hub,
+                         StocksPriceService priceService,
+                         ActiveSubscription active,
+                         WebSocketClient polygonClient,
+                         MeterRegistry registry) {
+        this.hub = hub;
+        this.priceService = priceService;
+        this.active = active;
+        this.polygonClient = polygonClient;
+
+        this.lagSummary = DistributionSummary.builder("stocks.ws.session.lag")
+                .description("How long a session has had unsent frames when a new tick arrives")
+                .baseUnit("milliseconds")
+                .register(registry);
+        this.conflatedSummary = DistributionSummary.builder("stocks.ws.session.conflated")
+                .description("Frames replaced by newer ones before sending, per closed session")
+                .register(registry);
+        this.slowConsumers = Counter.builder("stocks.ws.slow.consumers")
+                .description("Sessions closed for lagging longer than stocks.ws.max-lag-ms")
+                .register(registry);
+    }
+
+    public Mono<Void> handle(WebSocketSession session) {
+        // userKey берём из заголовка; если нет — "guest"
+        String userKey = Optional.ofNullable(
+                session.getHandshakeInfo().getHeaders().getFirst("X-User-Key")
+        ).filter(s -> !s.isBlank()).orElse("guest");
+
+        return new Session(session, userKey).run();
+    }
+
+    private final class Session {
+
+        private final WebSocketSession ws;
+        private final String userKey;
+        private final ConflatingMailbox outbound = new ConflatingMailbox();
+        private final AtomicBoolean closing = new AtomicBoolean(false);
+        // ticker -> подписка этой сессии на хаб
+        private final Map<String, Disposable> streams = new ConcurrentHashMap<>();
+
+        Session(WebSocketSession ws, String userKey) {
+            this.ws = ws;
+            this.userKey = userKey;
+        }
+
+        Mono<Void> run() {
+            // JSON уже закодирован в PricesHub: оборачиваем общий byte[] без копирования
+            Mono<Void> send = ws.send(outbound.flux().map(f -> new WebSocketMessage(
+                    WebSocketMessage.Type.TEXT, ws.bufferFactory().wrap(f.json()))));
+            Mono<Void> recv = ws.receive()
+                    .map(WebSocketMessage::getPayloadAsText)
+                    .doOnNext(this::onCommand)
+                    .then();
+
+            // стримим только то, что сессия сама запросила командой subscribe: REST-тикер
+            // пользователя тут не подхватываем — у всех анонимных сокетов один ключ "guest"
+            return Mono.when(send, recv).doFinally(sig -> close());
+        }
+
+        private void onCommand(String text) {
+            WatchCommand cmd;
+            try {
+                cmd = mapper.readValue(text, WatchCommand.class);
+            } catch (Exception e) {
+                log.debug("WS[{}] bad command {}: {}", userKey, text, e.toString());
+                return;
+            }
+
+            List<String> tickers = cmd.tickers() == null ? List.of() : cmd.tickers();
+            String action = cmd.action() == null ? "" : cmd.action().toLowerCase(Locale.ROOT);
+            switch (action) {
+                case "subscribe" -> tickers.forEach(this::watch);
+                case "unsubscribe" -> tickers.forEach(this::unwatch);
+                case "snapshot" -> tickers.forEach(this::snapshot);
+                default -> log.debug("WS[{}] unknown action {}", userKey, cmd.action());
+            }
+        }
+
+        private void watch(String rawTicker) {
+            String ticker = norm(rawTicker);
+            if (ticker.isEmpty()) return;
+
+            active.watch(ws.getId(), ticker, polygonClient); // 0 -> 1 включает стрим Polygon
+            follow(ticker);
+        }
+
+        private void unwatch(String rawTicker) {
+            String ticker = norm(rawTicker);
+            Optional.ofNullable(streams.remove(ticker)).ifPresent(Disposable::dispose);
+            active.unwatch(ws.getId(), ticker, polygonClient); // 1 -> 0 выключает стрим Polygon
+            log.info("WS[{}]: unwatched {}", userKey, ticker);
+        }
+
+        private void follow(String rawTicker) {
+            String ticker = norm(rawTicker);
+            // сначала подписываемся на живой поток, чтобы не потерять тик между снапшотом и подпиской;
+            // снапшот всё равно уйдёт раньше: mailbox отдаёт историю вперёд живых кадров
+            boolean[] added = {false};
+            streams.computeIfAbsent(ticker, t -> {
+                added[0] = true;
+                return hub.fluxFor(t)
+                        .doOnSubscribe(s -> log.info("WS[{}] subscribe {}", userKey, t))
+                        .subscribe(this::offer);
+            });
+            if (added[0]) snapshot(ticker);
+        }
+
+        private void snapshot(String rawTicker) {
+            String ticker = norm(rawTicker);
+            outbound.offerSnapshot(ticker, hub.frames(priceService.recent(ticker, snapshotSize)));
+            checkLag();
+        }
+
+        private void offer(PriceFrame f) {
+            log.debug("WS SEND [{}] -> {}", userKey, f.price());
+            outbound.offer(f);
+            checkLag();
+        }
+
+        private void checkLag() {
+            long lag = outbound.lagMillis();
+            lagSummary.record(lag);
+            if (maxLagMs > 0 && lag > maxLagMs && closing.compareAndSet(false, true)) {
+                log.warn("WS[{}]: slow consumer, lag {} ms — closing", userKey, lag);
+                slowConsumers.increment();
+                ws.close(CloseStatus.POLICY_VIOLATION.withReason("slow consumer")).subscribe();
+            }
+        }
+
+        private void close() {
+            streams.values().forEach(Disposable::dispose);
+            streams.clear();
+            active.releaseSession(ws.getId(), polygonClient); // 1 -> 0 выключает стрим Polygon
+            conflatedSummary.record(outbound.conflatedCount());
+        }
+    }
+
+    private static String norm(String t) {
+        return t == null ? "" : t.trim().toUpperCase(Locale.ROOT);
+    }
+}
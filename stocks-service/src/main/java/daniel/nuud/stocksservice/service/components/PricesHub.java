@@ -1,24 +1,31 @@
 package daniel.nuud.stocksservice.service.components;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import daniel.nuud.stocksservice.dto.PriceFrame;
 import daniel.nuud.stocksservice.dto.StockPriceDto;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Sinks;
 
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 @Component
 public class PricesHub {
 
+    private final ObjectMapper mapper = new ObjectMapper();
+
     // ticker -> стрим по тикеру
-    private final ConcurrentHashMap<String, Sinks.Many<StockPriceDto>> sinks = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Sinks.Many<PriceFrame>> sinks = new ConcurrentHashMap<>();
     // ticker -> число активных WS-подписок (для логов/отладки или first/last, если понадобится)
     private final ConcurrentHashMap<String, AtomicInteger> refCnt = new ConcurrentHashMap<>();
 
-    public Flux<StockPriceDto> fluxFor(String rawTicker) {
+    public Flux<PriceFrame> fluxFor(String rawTicker) {
         final String ticker = norm(rawTicker);
-        var sink = sinks.computeIfAbsent(ticker, t -> Sinks.many().multicast().onBackpressureBuffer());
+        // без буфера: каждая сессия сама конфлатирует отставание в ConflatingMailbox
+        var sink = sinks.computeIfAbsent(ticker, t -> Sinks.many().multicast().directBestEffort());
         var cnt  = refCnt.computeIfAbsent(ticker, t -> new AtomicInteger(0));
 
         return sink.asFlux()
@@ -31,10 +38,23 @@ public class PricesHub {
                 });
     }
 
+    /** Сериализует тик один раз (только если есть подписчики) и раздаёт всем сессиям тикера. */
     public void emit(String rawTicker, StockPriceDto dto) {
         final String ticker = norm(rawTicker);
         var sink = sinks.get(ticker);
-        if (sink != null) sink.tryEmitNext(dto);
+        if (sink != null) sink.tryEmitNext(frame(dto));
+    }
+
+    public PriceFrame frame(StockPriceDto dto) {
+        try {
+            return new PriceFrame(dto, mapper.writeValueAsBytes(dto));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot encode price for " + dto.ticker(), e);
+        }
+    }
+
+    public List<PriceFrame> frames(List<StockPriceDto> dtos) {
+        return dtos.stream().map(this::frame).toList();
     }
 
 
@@ -0,0 +1,102 @@
+package daniel.nuud.stocksservice.service.components;
+
+import daniel.nuud.stocksservice.dto.AnalyticsDto;
+import daniel.nuud.stocksservice.dto.WindowStatsDto;
+import daniel.nuud.stocksservice.model.Tick;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Инкрементальная аналитика по тикерам: OHLC/VWAP/min/max за скользящие окна и EWMA-волатильность.
+ * Состояние тикера меняет только его полоса IngestPipeline; после каждого тика публикуется
+ * неизменяемый снимок, который читают WS-кадры и REST без блокировок.
+ * Тики — минутные бары, поэтому окно короче двух минут держало бы один бар и не имеет смысла.
+ */
+@Component
+public class RollingAnalytics {
+
+    static final long MIN_WINDOW_SEC = 120;
+
+    private final long[] windowsSec;
+    private final double lambda;
+
+    private final Map<String, TickerAnalytics> byTicker = new ConcurrentHashMap<>();
+
+    public RollingAnalytics(@Value("${stocks.analytics.windows-sec:300,900,3600}") long[] windowsSec,
+                            @Value("${stocks.analytics.ewma-lambda:0.94}") double lambda) {
+        if (lambda <= 0 || lambda >= 1) throw new IllegalArgumentException("ewma-lambda must be in (0, 1)");
+        for (long w : windowsSec) {
+            if (w < MIN_WINDOW_SEC)
+                throw new IllegalArgumentException("analytics windows must be at least " + MIN_WINDOW_SEC + "s, got " + w);
+        }
+        this.windowsSec = windowsSec.clone();
+        this.lambda = lambda;
+    }
+
+    /** Учесть тик и вернуть свежий снимок. Вызывается из полосы тикера. */
+    public AnalyticsDto update(Tick tick) {
+        return byTicker.computeIfAbsent(tick.ticker(), t -> new TickerAnalytics(t, windowsSec, lambda)).add(tick);
+    }
+
+    /** Последний снимок аналитики тикера. */
+    public Optional<AnalyticsDto> snapshot(String ticker) {
+        TickerAnalytics a = byTicker.get(ticker);
+        return a == null ? Optional.empty() : Optional.ofNullable(a.latest);
+    }
+
+    private static final class TickerAnalytics {
+        private final String ticker;
+        private final RollingWindow[] windows;
+        private final double lambda;
+
+        private double lastPrice = Double.NaN;
+        private double variance = Double.NaN;
+
+        private volatile AnalyticsDto latest;
+
+        TickerAnalytics(String ticker, long[] windowsSec, double lambda) {
+            this.ticker = ticker;
+            this.lambda = lambda;
+            this.windows = new RollingWindow[windowsSec.length];
+            for (int i = 0; i < windowsSec.length; i++) {
+                windows[i] = new RollingWindow(label(windowsSec[i]), windowsSec[i] * 1000);
+            }
+        }
+
+        AnalyticsDto add(Tick tick) {
+            double price = tick.close();
+            if (lastPrice > 0 && price > 0) {
+                double r = Math.log(price / lastPrice);
+                variance = Double.isNaN(variance) ? r * r : lambda * variance + (1 - lambda) * r * r;
+            }
+            lastPrice = price;
+
+            WindowStatsDto[] stats = new WindowStatsDto[windows.length];
+            for (int i = 0; i < windows.length; i++) {
+                windows[i].add(tick.timestamp(), tick.open(), tick.high(), tick.low(), price,
+                        tick.volume(), tick.vwap());
+                stats[i] = windows[i].snapshot();
+            }
+
+            AnalyticsDto dto = new AnalyticsDto(
+                    ticker,
+                    tick.timestamp(),
+                    Double.isNaN(variance) ? null : Math.sqrt(variance),
+                    List.of(stats)
+            );
+            latest = dto;
+            return dto;
+        }
+
+        private static String label(long sec) {
+            if (sec % 3600 == 0) return sec / 3600 + "h";
+            if (sec % 60 == 0) return sec / 60 + "m";
+            return sec + "s";
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package daniel.nuud.stocksservice.service.components;
+
+import daniel.nuud.stocksservice.dto.WindowStatsDto;
+
+/**
+ * Скользящее окно баров одного тикера фиксированной длительности.
+ * Бары лежат в кольце на примитивных массивах, адресуемом абсолютным номером бара (seq & mask).
+ * В окно сворачиваются бары целиком: open — первого бара, high/low — экстремумы h/l баров,
+ * VWAP — по vw баров, взвешенных объёмом (close, если vw нет). Суммы для VWAP ведутся
+ * инкрементально, максимум и минимум — монотонными деками номеров баров, поэтому бар
+ * обходится в O(1) амортизированно. Используется только из одного потока.
+ */
+final class RollingWindow {
+
+    private final String label;
+    private final long lengthMs;
+
+    private long[] ts = new long[16];
+    private double[] op = new double[16];
+    private double[] hi = new double[16];
+    private double[] lo = new double[16];
+    private double[] cl = new double[16];
+    private double[] vol = new double[16];
+    private double[] pv = new double[16];   // vw * v бара
+    private long first;   // номер самого старого бара в окне
+    private long next;    // номер следующего бара
+
+    // деки номеров баров: low от головы к хвосту возрастают (min), high убывают (max)
+    private long[] minDq = new long[16];
+    private long[] maxDq = new long[16];
+    private long minHead, minTail, maxHead, maxTail;
+
+    private double sumPv;
+    private double sumV;
+
+    RollingWindow(String label, long lengthMs) {
+        this.label = label;
+        this.lengthMs = lengthMs;
+    }
+
+    /** Добавить бар, закончившийся в timestamp. vwap — NaN, если провайдер его не прислал. */
+    void add(long timestamp, double open, double high, double low, double close, double volume, double vwap) {
+        if (next - first == ts.length) grow();
+
+        double v = volume > 0 ? volume : 0;
+        double p = vwap > 0 ? vwap : close;
+        int mask = ts.length - 1;
+        int slot = (int) (next & mask);
+        ts[slot] = timestamp;
+        op[slot] = open;
+        hi[slot] = high;
+        lo[slot] = low;
+        cl[slot] = close;
+        vol[slot] = v;
+        pv[slot] = p * v;
+        sumPv += pv[slot];
+        sumV += v;
+
+        while (minTail > minHead && lo[(int) (minDq[(int) ((minTail - 1) & mask)] & mask)] >= low) minTail--;
+        minDq[(int) (minTail++ & mask)] = next;
+        while (maxTail > maxHead && hi[(int) (maxDq[(int) ((maxTail - 1) & mask)] & mask)] <= high) maxTail--;
+        maxDq[(int) (maxTail++ & mask)] = next;
+        next++;
+
+        evict(timestamp - lengthMs);
+    }
+
+    WindowStatsDto snapshot() {
+        int mask = ts.length - 1;
+        long last = next - 1;
+        return new WindowStatsDto(
+                label,
+                op[(int) (first & mask)],
+                hi[(int) (maxDq[(int) (maxHead & mask)] & mask)],
+                lo[(int) (minDq[(int) (minHead & mask)] & mask)],
+                cl[(int) (last & mask)],
+                sumV > 0 ? sumPv / sumV : null,
+                sumV,
+                (int) (next - first)
+        );
+    }
+
+    /** Выбросить бары, закончившиеся не позже from, оставив хотя бы последний. */
+    private void evict(long from) {
+        int mask = ts.length - 1;
+        while (next - first > 1 && ts[(int) (first & mask)] <= from) {
+            int slot = (int) (first & mask);
+            sumPv -= pv[slot];
+            sumV -= vol[slot];
+            if (minDq[(int) (minHead & mask)] == first) minHead++;
+            if (maxDq[(int) (maxHead & mask)] == first) maxHead++;
+            first++;
+        }
+        if (next - first == 1) {
+            // сбрасываем накопленную погрешность вычитаний
+            int slot = (int) (first & mask);
+            sumPv = pv[slot];
+            sumV = vol[slot];
+        }
+    }
+
+    private void grow() {
+        int n = ts.length;
+        int mask = n - 1;
+        int nmask = (n << 1) - 1;
+
+        long[] nts = new long[n << 1];
+        double[][] cols = {op, hi, lo, cl, vol, pv};
+        double[][] ncols = new double[cols.length][n << 1];
+        for (long s = first; s < next; s++) {
+            nts[(int) (s & nmask)] = ts[(int) (s & mask)];
+            for (int c = 0; c < cols.length; c++) ncols[c][(int) (s & nmask)] = cols[c][(int) (s & mask)];
+        }
+        ts = nts;
+        op = ncols[0];
+        hi = ncols[1];
+        lo = ncols[2];
+        cl = ncols[3];
+        vol = ncols[4];
+        pv = ncols[5];
+
+        minDq = regrow(minDq, minHead, minTail, mask, nmask);
+        maxDq = regrow(maxDq, maxHead, maxTail, mask, nmask);
+    }
+
+    private static long[] regrow(long[] dq, long head, long tail, int mask, int nmask) {
+        long[] out = new long[nmask + 1];
+        for (long i = head; i < tail; i++) out[(int) (i & nmask)] = dq[(int) (i & mask)];
+        return out;
+    }
+}
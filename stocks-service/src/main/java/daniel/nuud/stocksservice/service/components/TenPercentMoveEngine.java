@@ -1,13 +1,11 @@
 package daniel.nuud.stocksservice.service.components;
 
-import daniel.nuud.stocksservice.model.StockPrice;
+import daniel.nuud.stocksservice.model.Tick;
 import daniel.nuud.stocksservice.notification.NotificationClient;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
-import reactor.core.publisher.Flux;
-import reactor.core.publisher.Mono;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
@@ -18,7 +16,7 @@ import java.util.concurrent.ConcurrentMap;
 @Slf4j
 @Component
 @RequiredArgsConstructor
-public class TenPercentMoveEngine {
+public class TenPercentMoveEngine implements TickListener {
 
     @Value("${alerts.move10.threshold:0.10}")
     private double threshold;
@@ -30,16 +28,17 @@ public class TenPercentMoveEngine {
     // относительно которого считаем 10% движение
     private final ConcurrentMap<String, Double> anchor = new ConcurrentHashMap<>();
 
-    public Mono<Void> onPrice(StockPrice price) {
-        final String ticker = price.getTicker();
-        final double curr = price.getPrice();
+    @Override
+    public void onTick(Tick tick) {
+        final String ticker = tick.ticker();
+        final double curr = tick.close();
 
         // если якоря нет — ставим и выходим (не уведомляем на первом значении)
         Double ref = anchor.putIfAbsent(ticker, curr);
-        if (ref == null || ref == 0.0) return Mono.empty();
+        if (ref == null || ref == 0.0) return;
 
         double change = (curr - ref) / ref;
-        if (Math.abs(change) < threshold) return Mono.empty();
+        if (Math.abs(change) < threshold) return;
 
         String dir = change >= 0 ? "UP" : "DOWN";
         double pct = BigDecimal.valueOf(Math.abs(change) * 100.0)
@@ -50,23 +49,23 @@ public class TenPercentMoveEngine {
 
         // все пользователи, для кого сейчас активен этот тикер
         Set<String> users = active.usersOf(ticker);
-        if (users.isEmpty()) return Mono.empty();
+        if (users.isEmpty()) return;
 
         String title = "Price move " + dir;
         String message = ticker + " moved " + pct + "%  from " +
                 round(ref, 2) + " to " + round(curr, 2);
 
-        return Flux.fromIterable(users)
-                .flatMap(userKey -> notificationClient.sendNotification(
-                        userKey,
-                        title,
-                        message,
-                        "WARN",
-                        "STOCKS:MOVE10::" + ticker + ":" + dir
-                ))
-                .doOnComplete(() -> log.info("Move10 {} [{}%] -> notified: {}", ticker, pct, users))
-                .doOnError(err -> log.warn("Move10 notify failed: {}", err.toString()))
-                .then();
+        // алерты уходят пачками через NotificationClient, а не отдельным POST на пользователя
+        for (String userKey : users) {
+            notificationClient.enqueue(
+                    userKey,
+                    title,
+                    message,
+                    "WARN",
+                    "STOCKS:MOVE10::" + ticker + ":" + dir
+            );
+        }
+        log.info("Move10 {} [{}%] -> queued for {} users", ticker, pct, users.size());
     }
 
     private static double round(double v, int scale) {
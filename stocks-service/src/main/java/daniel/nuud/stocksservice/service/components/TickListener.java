@@ -0,0 +1,13 @@
+package daniel.nuud.stocksservice.service.components;
+
+import daniel.nuud.stocksservice.model.Tick;
+
+/**
+ * Потребитель тиков в полосе IngestPipeline (алерты, аналитика).
+ * Все бины с этим интерфейсом вызываются по порядку для каждого тика после сохранения цены;
+ * тики одного тикера приходят из одного потока и по порядку.
+ */
+public interface TickListener {
+
+    void onTick(Tick tick);
+}
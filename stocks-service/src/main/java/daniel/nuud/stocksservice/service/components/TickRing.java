@@ -0,0 +1,99 @@
+package daniel.nuud.stocksservice.service.components;
+
+import java.lang.invoke.VarHandle;
+
+/**
+ * Кольцевой буфер последних тиков одного тикера на параллельных примитивных массивах.
+ * Один писатель (полоса IngestPipeline этого тикера), читатели без блокировок через seqlock:
+ * запись не аллоцирует, вытеснение старого тика — простая перезапись слота.
+ */
+public final class TickRing {
+
+    private final int capacity;
+    private final double[] prices;
+    private final long[] timestamps;
+
+    // чётное — буфер согласован, нечётное — идёт запись
+    private volatile long seq;
+    // всего записано тиков; читается только внутри окна seq
+    private long written;
+
+    public TickRing(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive");
+        this.capacity = capacity;
+        this.prices = new double[capacity];
+        this.timestamps = new long[capacity];
+    }
+
+    /** Добавить тик. Вызывается только из одного потока. */
+    public void add(double price, long timestamp) {
+        long s = seq;
+        seq = s + 1;
+        VarHandle.storeStoreFence();
+
+        int slot = (int) (written % capacity);
+        prices[slot] = price;
+        timestamps[slot] = timestamp;
+        written++;
+
+        seq = s + 2;
+    }
+
+    /**
+     * Скопировать до n последних тиков (от старых к новым) в переданные массивы.
+     * @return сколько тиков скопировано
+     */
+    public int last(int n, double[] outPrices, long[] outTimestamps) {
+        int limit = Math.min(Math.min(n, capacity), Math.min(outPrices.length, outTimestamps.length));
+        while (true) {
+            long s = seq;
+            if ((s & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+
+            long w = written;
+            int count = (int) Math.min(limit, w);
+            long start = w - count;
+            for (int i = 0; i < count; i++) {
+                int slot = (int) ((start + i) % capacity);
+                outPrices[i] = prices[slot];
+                outTimestamps[i] = timestamps[slot];
+            }
+
+            VarHandle.loadLoadFence();
+            if (seq == s) return count;
+        }
+    }
+
+    /** Последняя цена или NaN, если тиков ещё не было. */
+    public double latestPrice() {
+        while (true) {
+            long s = seq;
+            if ((s & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+
+            long w = written;
+            double price = w == 0 ? Double.NaN : prices[(int) ((w - 1) % capacity)];
+
+            VarHandle.loadLoadFence();
+            if (seq == s) return price;
+        }
+    }
+
+    public int size() {
+        while (true) {
+            long s = seq;
+            long w = written;
+            VarHandle.loadLoadFence();
+            if ((s & 1) == 0 && seq == s) return (int) Math.min(w, capacity);
+            Thread.onSpinWait();
+        }
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,118 @@
+package daniel.nuud.stocksservice.alerts;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ObjDoubleConsumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CrossingIndexTest {
+
+    private final CrossingIndex index = new CrossingIndex();
+    private final List<Long> fired = new ArrayList<>();
+    private final ObjDoubleConsumer<AlertRule> fire = (rule, value) -> fired.add(rule.id());
+
+    private static AlertRule rule(long id, RuleType type, double threshold) {
+        return new AlertRule(id, "u", "AAPL", type, threshold, 0);
+    }
+
+    @Test
+    void firstValueOnlySetsReference() {
+        index.add(rule(1, RuleType.PRICE_ABOVE, 100));
+
+        index.update(150, fire);
+
+        assertTrue(fired.isEmpty());
+    }
+
+    @Test
+    void firesRisingRulesBetweenPreviousAndCurrentValue() {
+        index.add(rule(1, RuleType.PRICE_ABOVE, 100));
+        index.add(rule(2, RuleType.PRICE_ABOVE, 105));
+        index.add(rule(3, RuleType.PRICE_ABOVE, 110));
+        index.add(rule(4, RuleType.PRICE_BELOW, 102));
+
+        index.update(99, fire);
+        index.update(105, fire);
+
+        assertEquals(List.of(1L, 2L), fired);
+    }
+
+    @Test
+    void thresholdEqualToPreviousValueDoesNotFireAgain() {
+        index.add(rule(1, RuleType.PRICE_ABOVE, 100));
+
+        index.update(99, fire);
+        index.update(100, fire);
+        index.update(101, fire);
+
+        assertEquals(List.of(1L), fired);
+    }
+
+    @Test
+    void firesFallingRulesOnlyOnTheWayDown() {
+        index.add(rule(1, RuleType.PRICE_BELOW, 95));
+        index.add(rule(2, RuleType.PRICE_BELOW, 90));
+
+        index.update(100, fire);
+        index.update(94, fire);
+        index.update(96, fire);
+        index.update(89, fire);
+
+        // 96 -> 89 пересекает оба порога, по возрастанию: 90, затем 95
+        assertEquals(List.of(1L, 2L, 1L), fired);
+    }
+
+    @Test
+    void percentRuleDirectionFollowsThresholdSign() {
+        index.add(rule(1, RuleType.VWAP_DEVIATION, 2));
+        index.add(rule(2, RuleType.VWAP_DEVIATION, -2));
+
+        index.update(0, fire);
+        index.update(3, fire);
+        index.update(-3, fire);
+
+        assertEquals(List.of(1L, 2L), fired);
+    }
+
+    @Test
+    void removedRuleNoLongerFiresAndDuplicatesAreKeptApart() {
+        AlertRule a = rule(1, RuleType.PRICE_ABOVE, 100);
+        AlertRule b = rule(2, RuleType.PRICE_ABOVE, 100);
+        index.add(a);
+        index.add(b);
+        index.remove(a);
+
+        index.update(99, fire);
+        index.update(101, fire);
+
+        assertEquals(List.of(2L), fired);
+        index.remove(b);
+        assertTrue(index.isEmpty());
+    }
+
+    @Test
+    void rebaseMovesReferenceWithoutFiring() {
+        index.add(rule(1, RuleType.GAP_PERCENT, 3));
+
+        index.update(10, fire);
+        index.rebase(0);
+        index.update(4, fire);
+
+        assertEquals(List.of(1L), fired);
+    }
+
+    @Test
+    void nanValuesAreIgnored() {
+        index.add(rule(1, RuleType.PRICE_ABOVE, 100));
+
+        index.update(99, fire);
+        index.update(Double.NaN, fire);
+        index.update(101, fire);
+
+        assertTrue(fired.isEmpty());
+    }
+}
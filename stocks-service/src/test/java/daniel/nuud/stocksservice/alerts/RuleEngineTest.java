@@ -0,0 +1,79 @@
+package daniel.nuud.stocksservice.alerts;
+
+import daniel.nuud.stocksservice.model.Tick;
+import daniel.nuud.stocksservice.notification.NotificationClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class RuleEngineTest {
+
+    private static final long MINUTE = 60_000L;
+    private static final ZoneId NY = ZoneId.of("America/New_York");
+
+    private final NotificationClient notifications = mock(NotificationClient.class);
+    private final RuleEngine engine = new RuleEngine(notifications);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(engine, "cooldownMs", 5 * MINUTE);
+    }
+
+    private void tick(double close, long minute) {
+        engine.onTick(new Tick("AAPL", close, minute * MINUTE, Double.NaN, Double.NaN));
+    }
+
+    private void tickAt(double close, int day, int hour, int minute) {
+        long ts = ZonedDateTime.of(2024, 1, day, hour, minute, 0, 0, NY).toInstant().toEpochMilli();
+        engine.onTick(new Tick("AAPL", close, ts, Double.NaN, Double.NaN));
+    }
+
+    @Test
+    void gapIsMeasuredBetweenNewYorkDays() {
+        engine.register("u1", "AAPL", RuleType.GAP_PERCENT, 5, null);
+
+        tickAt(100, 16, 15, 0);   // вторник, основная сессия
+        tickAt(106, 16, 19, 30);  // вторник, вечерняя сессия: в UTC уже среда, но это не новый день
+        tickAt(112, 17, 9, 30);   // среда: гэп от 106, +5.66%
+
+        verify(notifications, times(1)).enqueue(eq("u1"), anyString(), anyString(), eq("WARN"), anyString());
+        verify(notifications).enqueue(eq("u1"), anyString(), contains("+5.66%"), eq("WARN"), anyString());
+    }
+
+    @Test
+    void priceOscillatingAroundThresholdFiresOncePerCooldown() {
+        engine.register("u1", "AAPL", RuleType.PRICE_ABOVE, 100, null);
+
+        tick(99, 0);
+        tick(101, 1);   // срабатывание
+        tick(99, 2);
+        tick(101, 3);   // в паузе
+        tick(99, 6);
+        tick(101, 7);   // пауза прошла
+
+        verify(notifications, times(2)).enqueue(eq("u1"), anyString(), anyString(), eq("WARN"), anyString());
+    }
+
+    @Test
+    void cooldownIsPerRule() {
+        engine.register("u1", "AAPL", RuleType.PRICE_ABOVE, 100, null);
+        engine.register("u2", "AAPL", RuleType.PRICE_ABOVE, 101, null);
+
+        tick(99, 0);
+        tick(100.5, 1);
+        tick(102, 2);
+
+        verify(notifications, times(1)).enqueue(eq("u1"), anyString(), anyString(), eq("WARN"), anyString());
+        verify(notifications, times(1)).enqueue(eq("u2"), anyString(), anyString(), eq("WARN"), anyString());
+    }
+}
@@ -0,0 +1,62 @@
+package daniel.nuud.stocksservice.service;
+
+import daniel.nuud.stocksservice.service.components.ExponentialBackoff;
+import daniel.nuud.stocksservice.service.components.PolygonMessageProcessor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class WebSocketClientTest {
+
+    private static final String AUTH = "{\"action\":\"auth\",\"params\":\"key\"}";
+    private static final String SUB_AAPL = "{\"action\":\"subscribe\",\"params\":\"AM.AAPL\"}";
+    // так Polygon отвечает на auth
+    private static final String AUTH_SUCCESS =
+            "[{\"ev\":\"status\",\"status\":\"auth_success\",\"message\":\"authenticated\"}]";
+
+    private final ExponentialBackoff backoff = mock(ExponentialBackoff.class);
+    private final WebSocketClient client = new WebSocketClient(mock(PolygonMessageProcessor.class), backoff);
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        ReflectionTestUtils.setField(client, "apiKey", "key");
+        ReflectionTestUtils.setField(client, "subscribeBatchMs", 1L);
+        // соединение считается открытым: сессии в тесте запускаются вручную
+        ((AtomicReference<Disposable>) ReflectionTestUtils.getField(client, "connectionRef")).set(Disposables.single());
+    }
+
+    @Test
+    void resubscribesOnNewSessionAfterAuthSuccess() {
+        Sinks.Many<String> first = client.startSession();
+        client.onText(AUTH_SUCCESS);
+        client.subscribeTo("aapl");
+
+        StepVerifier.create(first.asFlux())
+                .expectNext(AUTH, SUB_AAPL)
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+
+        // сокет закрылся, реконнект
+        client.endSession(first);
+        Sinks.Many<String> second = client.startSession();
+        client.onText(AUTH_SUCCESS);
+
+        StepVerifier.create(second.asFlux())
+                .expectNext(AUTH, SUB_AAPL)
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+        verify(backoff, times(2)).reset();
+    }
+}
@@ -0,0 +1,112 @@
+package daniel.nuud.stocksservice.service.components;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ActiveSubscriptionTest {
+
+    /** Повторяет семантику WebSocketClient: набор тикеров, которые должны стримиться. */
+    private static final class RecordingUpstream implements ActiveSubscription.Upstream {
+        final Set<String> open = ConcurrentHashMap.newKeySet();
+        final List<String> log = new ArrayList<>();
+
+        @Override
+        public synchronized void open(String ticker) {
+            open.add(ticker);
+            log.add("+" + ticker);
+        }
+
+        @Override
+        public synchronized void close(String ticker) {
+            open.remove(ticker);
+            log.add("-" + ticker);
+        }
+    }
+
+    private final ActiveSubscription active = new ActiveSubscription();
+    private final RecordingUpstream upstream = new RecordingUpstream();
+
+    @Test
+    void opensOnFirstSubscriberAndClosesOnLast() {
+        assertTrue(active.subscribe("u1", "aapl", upstream).first());
+        assertFalse(active.subscribe("u2", "AAPL", upstream).first());
+        assertFalse(active.watch("s1", "AAPL", upstream));
+
+        assertFalse(active.unsubscribe("u1", "AAPL", upstream));
+        assertFalse(active.unsubscribe("u2", "AAPL", upstream));
+        assertTrue(active.unwatch("s1", "AAPL", upstream));
+
+        assertEquals(List.of("+AAPL", "-AAPL"), upstream.log);
+        assertEquals(0, active.subscribers("AAPL"));
+    }
+
+    @Test
+    void switchingTickerReleasesPrevious() {
+        active.subscribe("u1", "AAPL", upstream);
+        ActiveSubscription.Change change = active.subscribe("u1", "MSFT", upstream);
+
+        assertTrue(change.first());
+        assertEquals("AAPL", change.released());
+        assertEquals(Set.of("MSFT"), upstream.open);
+        assertEquals(Set.of("u1"), active.usersOf("MSFT"));
+        assertTrue(active.usersOf("AAPL").isEmpty());
+    }
+
+    @Test
+    void unsubscribeFromOtherTickerIsIgnored() {
+        active.subscribe("u1", "AAPL", upstream);
+
+        assertFalse(active.unsubscribe("u1", "MSFT", upstream));
+        assertEquals(Set.of("AAPL"), upstream.open);
+    }
+
+    @Test
+    void releaseSessionClosesOnlyUnsharedTickers() {
+        active.watch("s1", "AAPL", upstream);
+        active.watch("s1", "MSFT", upstream);
+        active.subscribe("u1", "MSFT", upstream);
+
+        assertEquals(List.of("AAPL"), active.releaseSession("s1", upstream));
+        assertEquals(Set.of("MSFT"), upstream.open);
+        assertEquals(Set.of(), active.sessionsOf("MSFT"));
+    }
+
+    @Test
+    void upstreamMatchesSubscribersUnderConcurrentChurn() throws Exception {
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < threads; t++) {
+            String user = "u" + t;
+            pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < 20_000; i++) {
+                    if ((i & 1) == 0) active.subscribe(user, "AAPL", upstream);
+                    else active.unsubscribe(user, "AAPL", upstream);
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+
+        // после каждого перехода стрим открыт ровно тогда, когда у тикера есть подписчики
+        assertEquals(active.subscribers("AAPL") > 0, upstream.open.contains("AAPL"));
+        for (int i = 1; i < upstream.log.size(); i++) {
+            assertFalse(upstream.log.get(i).equals(upstream.log.get(i - 1)), "open/close must alternate");
+        }
+    }
+}
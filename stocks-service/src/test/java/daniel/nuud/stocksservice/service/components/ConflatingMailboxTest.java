@@ -0,0 +1,115 @@
+package daniel.nuud.stocksservice.service.components;
+
+import daniel.nuud.stocksservice.dto.PriceFrame;
+import daniel.nuud.stocksservice.dto.StockPriceDto;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConflatingMailboxTest {
+
+    private final ConflatingMailbox mailbox = new ConflatingMailbox();
+
+    private static PriceFrame frame(String ticker, double price) {
+        return new PriceFrame(new StockPriceDto(ticker, price, (long) price), new byte[0]);
+    }
+
+    @Test
+    void passesFramesThroughWhileClientKeepsUp() {
+        PriceFrame a1 = frame("AAPL", 1), a2 = frame("AAPL", 2);
+
+        StepVerifier.create(mailbox.flux())
+                .then(() -> mailbox.offer(a1))
+                .expectNext(a1)
+                .then(() -> mailbox.offer(a2))
+                .expectNext(a2)
+                .thenCancel()
+                .verify();
+
+        assertEquals(0, mailbox.conflatedCount());
+    }
+
+    @Test
+    void keepsOnlyLatestFramePerTickerWhileStalled() {
+        PriceFrame a1 = frame("AAPL", 1), m1 = frame("MSFT", 1), a2 = frame("AAPL", 2);
+
+        StepVerifier.create(mailbox.flux(), 0)
+                .then(() -> {
+                    mailbox.offer(a1);
+                    mailbox.offer(m1);
+                    mailbox.offer(a2);
+                })
+                .thenRequest(10)
+                .expectNext(a2, m1)
+                .thenCancel()
+                .verify();
+
+        assertEquals(1, mailbox.conflatedCount());
+        assertEquals(0, mailbox.lagMillis());
+    }
+
+    @Test
+    void snapshotFramesAreNotConflatedAndGoFirst() {
+        PriceFrame live = frame("AAPL", 9);
+        List<PriceFrame> history = List.of(frame("AAPL", 1), frame("AAPL", 2), frame("AAPL", 3));
+
+        StepVerifier.create(mailbox.flux(), 0)
+                .then(() -> {
+                    mailbox.offer(live);
+                    mailbox.offerSnapshot("AAPL", history);
+                })
+                .thenRequest(2)
+                .expectNext(history.get(0), history.get(1))
+                .thenRequest(10)
+                .expectNext(history.get(2), live)
+                .thenCancel()
+                .verify();
+
+        assertEquals(0, mailbox.conflatedCount());
+    }
+
+    @Test
+    void repeatedSnapshotReplacesPendingOneForSameTicker() {
+        List<PriceFrame> stale = List.of(frame("AAPL", 1), frame("AAPL", 2));
+        List<PriceFrame> fresh = List.of(frame("AAPL", 3), frame("AAPL", 4));
+        List<PriceFrame> msft = List.of(frame("MSFT", 1));
+
+        StepVerifier.create(mailbox.flux(), 0)
+                .then(() -> {
+                    mailbox.offerSnapshot("AAPL", stale);
+                    mailbox.offerSnapshot("MSFT", msft);
+                    mailbox.offerSnapshot("AAPL", fresh);
+                })
+                .thenRequest(10)
+                .expectNext(fresh.get(0), fresh.get(1), msft.get(0))
+                .thenCancel()
+                .verify();
+
+        assertEquals(2, mailbox.conflatedCount());
+        assertEquals(0, mailbox.lagMillis());
+    }
+
+    @Test
+    void reportsLagWhileFramesWait() {
+        StepVerifier.create(mailbox.flux(), 0)
+                .then(() -> mailbox.offerSnapshot("AAPL", List.of(frame("AAPL", 1))))
+                .then(() -> {
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    assertTrue(mailbox.lagMillis() >= 10);
+                })
+                .thenRequest(1)
+                .expectNextCount(1)
+                .thenCancel()
+                .verify();
+
+        assertEquals(0, mailbox.lagMillis());
+    }
+}
@@ -0,0 +1,182 @@
+package daniel.nuud.stocksservice.service.components;
+
+import daniel.nuud.stocksservice.model.Tick;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PolygonFrameParserTest {
+
+    /** Складывает события парсера в списки для проверок. */
+    private static final class Recorder implements PolygonFrameParser.Listener {
+        final List<Tick> ticks = new ArrayList<>();
+        final List<String> tickers = new ArrayList<>();
+        final List<Double> closes = new ArrayList<>();
+        final List<Long> ends = new ArrayList<>();
+        final List<Double> volumes = new ArrayList<>();
+        final List<Double> dayVwaps = new ArrayList<>();
+        final List<String> statuses = new ArrayList<>();
+        final List<String> messages = new ArrayList<>();
+
+        @Override
+        public void onAggregate(Tick tick) {
+            ticks.add(tick);
+            tickers.add(tick.ticker());
+            closes.add(tick.close());
+            ends.add(tick.timestamp());
+            volumes.add(tick.volume());
+            dayVwaps.add(tick.dayVwap());
+        }
+
+        @Override
+        public void onStatus(String status, String message) {
+            statuses.add(status);
+            messages.add(message);
+        }
+    }
+
+    private static Recorder parse(String frame) {
+        Recorder r = new Recorder();
+        PolygonFrameParser.parse(frame, r);
+        return r;
+    }
+
+    @Test
+    void parsesSingleAggregate() {
+        Recorder r = parse("{\"ev\":\"AM\",\"sym\":\"AAPL\",\"v\":1200,\"a\":189.51,\"c\":189.42,\"s\":1700000000000,\"e\":1700000060000}");
+
+        assertEquals(List.of("AAPL"), r.tickers);
+        assertEquals(List.of(189.42), r.closes);
+        assertEquals(List.of(1700000060000L), r.ends);
+        assertEquals(List.of(1200.0), r.volumes);
+        assertEquals(List.of(189.51), r.dayVwaps);
+    }
+
+    @Test
+    void parsesWholeBar() {
+        Recorder r = parse("{\"ev\":\"AM\",\"sym\":\"AAPL\",\"o\":189.3,\"h\":189.55,\"l\":189.21,\"c\":189.42,"
+                + "\"v\":1200,\"vw\":189.4021,\"a\":189.51,\"av\":500000,\"s\":1700000000000,\"e\":1700000060000}");
+
+        assertEquals(List.of(new Tick("AAPL", 189.3, 189.55, 189.21, 189.42, 1700000000000L, 1700000060000L,
+                1200, 189.4021, 189.51)), r.ticks);
+    }
+
+    @Test
+    void missingOpenHighLowFallBackToClose() {
+        Recorder r = parse("{\"ev\":\"AM\",\"sym\":\"AMD\",\"c\":7.5,\"e\":2}");
+
+        Tick t = r.ticks.get(0);
+        assertEquals(7.5, t.open());
+        assertEquals(7.5, t.high());
+        assertEquals(7.5, t.low());
+        assertTrue(Double.isNaN(t.vwap()));
+        // без s бар считается закончившимся в e: начало — e - 1
+        assertEquals(1L, t.start());
+    }
+
+    @Test
+    void parsesMultiEventArray() {
+        Recorder r = parse("""
+                [ {"ev":"AM","sym":"AAPL","c":1.5,"e":10},
+                  {"ev":"A","sym":"MSFT","c":2.25,"e":20},
+                  {"ev":"T","sym":"NVDA","p":3,"t":30},
+                  {"ev":"AM","sym":"TSLA","c":-4,"e":40} ]
+                """);
+
+        assertEquals(List.of("AAPL", "MSFT", "TSLA"), r.tickers);
+        assertEquals(List.of(1.5, 2.25, -4.0), r.closes);
+        assertEquals(List.of(10L, 20L, 40L), r.ends);
+    }
+
+    @Test
+    void fieldOrderDoesNotMatter() {
+        Recorder r = parse("[{\"e\":99,\"c\":7.125,\"sym\":\"AMD\",\"ev\":\"AM\"}]");
+
+        assertEquals(List.of("AMD"), r.tickers);
+        assertEquals(List.of(7.125), r.closes);
+        assertEquals(List.of(99L), r.ends);
+    }
+
+    @Test
+    void missingOptionalFieldsBecomeNaN() {
+        Recorder r = parse("{\"ev\":\"AM\",\"sym\":\"AMD\",\"c\":1,\"e\":2}");
+
+        assertEquals(1, r.tickers.size());
+        assertTrue(Double.isNaN(r.volumes.get(0)));
+        assertTrue(Double.isNaN(r.dayVwaps.get(0)));
+    }
+
+    @Test
+    void skipsAggregatesWithoutRequiredFields() {
+        Recorder r = parse("""
+                [{"ev":"AM","c":1,"e":2},
+                 {"ev":"AM","sym":"AAPL","e":2},
+                 {"ev":"AM","sym":"AAPL","c":1},
+                 {"sym":"AAPL","c":1,"e":2},
+                 {}]
+                """);
+
+        assertTrue(r.tickers.isEmpty());
+        assertTrue(r.statuses.isEmpty());
+    }
+
+    @Test
+    void parsesStatusFrames() {
+        Recorder r = parse("[{\"ev\":\"status\",\"status\":\"auth_success\",\"message\":\"authenticated\"},"
+                + "{\"ev\":\"status\",\"status\":\"connected\"}]");
+
+        assertEquals(List.of("auth_success", "connected"), r.statuses);
+        assertEquals(List.of("authenticated", ""), r.messages);
+        assertTrue(r.tickers.isEmpty());
+    }
+
+    @Test
+    void unescapesStatusAndTickerStrings() {
+        Recorder r = parse("[{\"ev\":\"status\",\"status\":\"error\",\"message\":\"bad \\\"key\\\"\\n\\u0041\\\\\"},"
+                + "{\"ev\":\"AM\",\"sym\":\"BRK\\/B\",\"c\":1,\"e\":2}]");
+
+        assertEquals(List.of("bad \"key\"\nA\\"), r.messages);
+        assertEquals(List.of("BRK/B"), r.tickers);
+    }
+
+    @Test
+    void skipsNestedObjectsArraysAndEscapedStringsInUnknownFields() {
+        Recorder r = parse("{\"ev\":\"AM\",\"meta\":{\"x\":[1,{\"y\":\"}]\\\"\"}],\"z\":null},"
+                + "\"tags\":[\"a\",[\"b\",\"]\"]],\"flag\":true,\"note\":\"c\\\",\\\"e\\\":1\","
+                + "\"sym\":\"AAPL\",\"c\":3.5,\"e\":4}");
+
+        assertEquals(List.of("AAPL"), r.tickers);
+        assertEquals(List.of(3.5), r.closes);
+        assertEquals(List.of(4L), r.ends);
+    }
+
+    @Test
+    void parsesExponentsAndLongFractions() {
+        Recorder r = parse("{\"ev\":\"AM\",\"sym\":\"X\",\"c\":1.2345678901234567,\"v\":1.5e3,\"e\":1.7e12}");
+
+        assertEquals(List.of(1.2345678901234567), r.closes);
+        assertEquals(List.of(1500.0), r.volumes);
+        assertEquals(List.of(1_700_000_000_000L), r.ends);
+    }
+
+    @Test
+    void emptyFramesProduceNoEvents() {
+        assertTrue(parse("").tickers.isEmpty());
+        assertTrue(parse("  [ ] ").tickers.isEmpty());
+        assertTrue(parse("[{}]").tickers.isEmpty());
+    }
+
+    @Test
+    void rejectsMalformedFrames() {
+        Recorder r = new Recorder();
+        assertThrows(IllegalArgumentException.class, () -> PolygonFrameParser.parse("[{\"ev\":\"AM\"", r));
+        assertThrows(IllegalArgumentException.class, () -> PolygonFrameParser.parse("{\"sym\" \"AAPL\"}", r));
+        assertThrows(IllegalArgumentException.class, () -> PolygonFrameParser.parse("{\"c\":}", r));
+        assertThrows(IllegalArgumentException.class, () -> PolygonFrameParser.parse("[{\"ev\":\"AM\"} {}]", r));
+    }
+}
@@ -0,0 +1,83 @@
+package daniel.nuud.stocksservice.service.components;
+
+import daniel.nuud.stocksservice.dto.WindowStatsDto;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class RollingWindowTest {
+
+    private static final long MIN = 60_000L;
+
+    private final RollingWindow window = new RollingWindow("5m", 5 * MIN);
+
+    @Test
+    void foldsWholeBars() {
+        window.add(1 * MIN, 10, 12, 9, 11, 100, 10.5);
+        window.add(2 * MIN, 11, 15, 10, 14, 300, 13.0);
+
+        WindowStatsDto s = window.snapshot();
+        assertEquals("5m", s.window());
+        assertEquals(10, s.open());
+        assertEquals(15, s.high());
+        assertEquals(9, s.low());
+        assertEquals(14, s.close());
+        // (10.5 * 100 + 13 * 300) / 400
+        assertEquals(12.375, s.vwap(), 1e-9);
+        assertEquals(400, s.volume());
+        assertEquals(2, s.ticks());
+    }
+
+    @Test
+    void vwapFallsBackToCloseWithoutVw() {
+        window.add(1 * MIN, 10, 10, 10, 10, 100, Double.NaN);
+        window.add(2 * MIN, 20, 20, 20, 20, 100, Double.NaN);
+
+        assertEquals(15, window.snapshot().vwap(), 1e-9);
+    }
+
+    @Test
+    void noVolumeMeansNoVwap() {
+        window.add(1 * MIN, 10, 10, 10, 10, Double.NaN, Double.NaN);
+
+        assertNull(window.snapshot().vwap());
+    }
+
+    @Test
+    void evictsBarsOlderThanWindowAndRecomputesExtremes() {
+        window.add(1 * MIN, 10, 30, 1, 10, 100, 10);   // экстремумы только в первом баре
+        for (int m = 2; m <= 6; m++) window.add(m * MIN, 10, 11, 9, 10, 100, 10);
+
+        WindowStatsDto s = window.snapshot();
+        assertEquals(5, s.ticks());
+        assertEquals(11, s.high());
+        assertEquals(9, s.low());
+        assertEquals(500, s.volume());
+    }
+
+    @Test
+    void keepsLastBarAfterLongGap() {
+        window.add(1 * MIN, 10, 11, 9, 10, 100, 10);
+        window.add(60 * MIN, 20, 21, 19, 20, 50, 20);
+
+        WindowStatsDto s = window.snapshot();
+        assertEquals(1, s.ticks());
+        assertEquals(20, s.open());
+        assertEquals(50, s.volume());
+        assertEquals(20, s.vwap(), 1e-9);
+    }
+
+    @Test
+    void growsPastInitialCapacity() {
+        RollingWindow hour = new RollingWindow("1h", 60 * MIN);
+        for (int m = 1; m <= 100; m++) hour.add(m * MIN, m, m + 0.5, m - 0.5, m, 1, m);
+
+        WindowStatsDto s = hour.snapshot();
+        assertEquals(60, s.ticks());
+        assertEquals(41, s.open());
+        assertEquals(100.5, s.high());
+        assertEquals(40.5, s.low());
+        assertEquals(100, s.close());
+    }
+}
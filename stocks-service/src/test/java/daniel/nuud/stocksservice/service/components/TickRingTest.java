@@ -0,0 +1,97 @@
+package daniel.nuud.stocksservice.service.components;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TickRingTest {
+
+    @Test
+    void emptyRing() {
+        TickRing ring = new TickRing(4);
+
+        assertEquals(0, ring.size());
+        assertTrue(Double.isNaN(ring.latestPrice()));
+        assertEquals(0, ring.last(10, new double[4], new long[4]));
+    }
+
+    @Test
+    void returnsLastTicksOldestFirst() {
+        TickRing ring = new TickRing(4);
+        ring.add(1.0, 10);
+        ring.add(2.0, 20);
+        ring.add(3.0, 30);
+
+        double[] prices = new double[2];
+        long[] ts = new long[2];
+        assertEquals(2, ring.last(2, prices, ts));
+        assertArrayEquals(new double[]{2.0, 3.0}, prices, 0);
+        assertArrayEquals(new long[]{20, 30}, ts);
+        assertEquals(3.0, ring.latestPrice());
+        assertEquals(3, ring.size());
+    }
+
+    @Test
+    void overwritesOldestWhenFull() {
+        TickRing ring = new TickRing(3);
+        for (int i = 1; i <= 7; i++) ring.add(i, i * 10L);
+
+        double[] prices = new double[5];
+        long[] ts = new long[5];
+        assertEquals(3, ring.last(5, prices, ts));
+        assertArrayEquals(new double[]{5, 6, 7, 0, 0}, prices, 0);
+        assertArrayEquals(new long[]{50, 60, 70, 0, 0}, ts);
+        assertEquals(3, ring.size());
+        assertEquals(7.0, ring.latestPrice());
+    }
+
+    @Test
+    void limitsCopyToOutputArrays() {
+        TickRing ring = new TickRing(8);
+        for (int i = 1; i <= 5; i++) ring.add(i, i);
+
+        double[] prices = new double[2];
+        long[] ts = new long[3];
+        assertEquals(2, ring.last(5, prices, ts));
+        assertArrayEquals(new double[]{4, 5}, prices, 0);
+    }
+
+    @Test
+    void rejectsNonPositiveCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new TickRing(0));
+    }
+
+    @Test
+    void readersNeverSeeTornTicks() throws Exception {
+        // писатель кладёт пары (i, i): рассинхрон цены и времени означает прочитанную половину записи
+        TickRing ring = new TickRing(16);
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<String> failure = new AtomicReference<>();
+
+        Thread reader = new Thread(() -> {
+            double[] prices = new double[16];
+            long[] ts = new long[16];
+            while (!done.get() && failure.get() == null) {
+                int n = ring.last(16, prices, ts);
+                for (int i = 0; i < n; i++) {
+                    if (prices[i] != ts[i] || (i > 0 && ts[i] != ts[i - 1] + 1)) {
+                        failure.set("torn read at " + i + ": " + prices[i] + " / " + ts[i]);
+                    }
+                }
+            }
+        });
+        reader.start();
+        for (long i = 0; i < 2_000_000; i++) ring.add(i, i);
+        done.set(true);
+        reader.join();
+
+        assertNull(failure.get());
+    }
+}